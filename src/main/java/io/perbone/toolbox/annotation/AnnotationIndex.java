@@ -0,0 +1,292 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The build-time index of one jar file or class directory, as written by
+ * {@link AnnotationIndexProcessor}.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class AnnotationIndex
+{
+    /** The index resource path inside a jar file or class directory */
+    static final String RESOURCE = "META-INF/toolbox/annotations.idx";
+
+    /** The first line of an index resource */
+    static final String HEADER = "# toolbox annotation index 2";
+
+    /** Placeholder for locations without index */
+    private static final AnnotationIndex NONE = new AnnotationIndex();
+
+    /** Indexes by code source location */
+    private static final Map<String, AnnotationIndex> LOCATIONS = new ConcurrentHashMap<String, AnnotationIndex>();
+
+    /** Annotated type names by annotation name */
+    private final Map<String, List<String>> types = new HashMap<String, List<String>>();
+
+    /** Annotated field names by class name and annotation name */
+    private final Map<String, List<String>> fields = new HashMap<String, List<String>>();
+
+    /** Annotated method signatures by class name and annotation name */
+    private final Map<String, List<String>> methods = new HashMap<String, List<String>>();
+
+    /** The types whose entries are complete */
+    private final Set<String> classes = new HashSet<String>();
+
+    private AnnotationIndex()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the index of the jar file or class directory the given class was loaded from.
+     * <p>
+     * Locations are read once and their index, or the lack of it, is remembered.
+     * 
+     * @param type
+     *            the class
+     * 
+     * @return the index or {@code null} if the class location has none
+     */
+    static AnnotationIndex of(final Class<?> type)
+    {
+        CodeSource cs;
+        try
+        {
+            cs = type.getProtectionDomain().getCodeSource();
+        }
+        catch (SecurityException e)
+        {
+            return null;
+        }
+
+        URL location = cs == null ? null : cs.getLocation();
+        if (location == null || !"file".equals(location.getProtocol()))
+            return null;
+
+        String key = location.toString();
+        AnnotationIndex index = LOCATIONS.get(key);
+        if (index == null)
+        {
+            try
+            {
+                index = load(Paths.get(location.toURI()));
+            }
+            catch (URISyntaxException | IllegalArgumentException e)
+            {
+                index = null;
+            }
+
+            LOCATIONS.put(key, index == null ? NONE : index);
+        }
+
+        return index == NONE ? null : index;
+    }
+
+    /**
+     * Reads the index of the given jar file or class directory.
+     * 
+     * @param root
+     *            the jar file or class directory
+     * 
+     * @return the index or {@code null} if the root has none or it cannot be read
+     */
+    static AnnotationIndex load(final Path root)
+    {
+        try
+        {
+            if (Files.isDirectory(root))
+            {
+                Path resource = root.resolve(RESOURCE);
+                if (!Files.isRegularFile(resource))
+                    return null;
+
+                try (InputStream in = Files.newInputStream(resource))
+                {
+                    return read(in);
+                }
+            }
+
+            if (Files.isRegularFile(root))
+            {
+                try (ZipFile zip = new ZipFile(root.toFile()))
+                {
+                    ZipEntry entry = zip.getEntry(RESOURCE);
+                    if (entry == null)
+                        return null;
+
+                    try (InputStream in = zip.getInputStream(entry))
+                    {
+                        return read(in);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // no usable index; callers fall back to reflection or class file scanning
+        }
+
+        return null;
+    }
+
+    /**
+     * Tells whether the index lists the given class, so its entries can be trusted; a class
+     * compiled without the processor is not listed.
+     * 
+     * @param className
+     *            the class binary name
+     * 
+     * @return {@code true} if the class is listed; {@code false} otherwise
+     */
+    boolean covers(final String className)
+    {
+        return classes.contains(className);
+    }
+
+    /**
+     * Returns the types annotated with the given annotation.
+     * 
+     * @param annotationName
+     *            the annotation binary name
+     * 
+     * @return an immutable list of class binary names
+     */
+    List<String> types(final String annotationName)
+    {
+        return get(types, annotationName);
+    }
+
+    /**
+     * Returns the fields of the given class annotated with the given annotation.
+     * 
+     * @param className
+     *            the class binary name
+     * @param annotationName
+     *            the annotation binary name
+     * 
+     * @return an immutable list of field names
+     */
+    List<String> fields(final String className, final String annotationName)
+    {
+        return get(fields, className + ' ' + annotationName);
+    }
+
+    /**
+     * Returns the methods of the given class annotated with the given annotation.
+     * 
+     * @param className
+     *            the class binary name
+     * @param annotationName
+     *            the annotation binary name
+     * 
+     * @return an immutable list of method signatures, as given by {@link #signature(String, Class[])}
+     */
+    List<String> methods(final String className, final String annotationName)
+    {
+        return get(methods, className + ' ' + annotationName);
+    }
+
+    /**
+     * Returns the method signature as written in an index.
+     * 
+     * @param name
+     *            the method name
+     * @param parameterTypes
+     *            the method parameter types
+     * 
+     * @return the signature
+     */
+    static String signature(final String name, final Class<?>[] parameterTypes)
+    {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++)
+        {
+            if (i > 0)
+                sb.append(',');
+            sb.append(parameterTypes[i].getTypeName());
+        }
+
+        return sb.append(')').toString();
+    }
+
+    private static AnnotationIndex read(final InputStream in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine()))
+            return null; // unknown layout
+
+        AnnotationIndex index = new AnnotationIndex();
+
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            String[] tokens = line.split(" ");
+            if (tokens.length == 2 && tokens[0].equals("C"))
+                index.classes.add(tokens[1]);
+            else if (tokens.length == 3 && tokens[1].equals("T"))
+                add(index.types, tokens[0], tokens[2]);
+            else if (tokens.length == 4 && tokens[1].equals("F"))
+                add(index.fields, tokens[2] + ' ' + tokens[0], tokens[3]);
+            else if (tokens.length == 4 && tokens[1].equals("M"))
+                add(index.methods, tokens[2] + ' ' + tokens[0], tokens[3]);
+        }
+
+        return index;
+    }
+
+    private static void add(final Map<String, List<String>> map, final String key, final String value)
+    {
+        List<String> list = map.get(key);
+        if (list == null)
+            map.put(key, list = new ArrayList<String>(2));
+        list.add(value);
+    }
+
+    private static List<String> get(final Map<String, List<String>> map, final String key)
+    {
+        List<String> list = map.get(key);
+        return list != null ? Collections.unmodifiableList(list) : Collections.<String> emptyList();
+    }
+}
\ No newline at end of file
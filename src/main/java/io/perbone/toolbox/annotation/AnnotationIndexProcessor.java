@@ -0,0 +1,295 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor writing the build-time index of the {@link Indexed} annotation types.
+ * <p>
+ * Every compiled module gets a {@value AnnotationIndex#RESOURCE} resource listing its annotated
+ * types, fields and methods, one per line:
+ * 
+ * <pre>
+ * com.acme.Marker T com.acme.Service
+ * com.acme.Marker F com.acme.Service name
+ * com.acme.Marker M com.acme.Service start(java.lang.String,int)
+ * C com.acme.Service
+ * </pre>
+ * 
+ * A type is listed only for the annotations declared on it, not for an
+ * {@link java.lang.annotation.Inherited} one its superclass carries, which is the rule the class
+ * file scan of {@link ClasspathScanner} follows too.
+ * <p>
+ * Every type compiled, annotated or not, gets a {@code C} line telling readers its entries are
+ * complete; readers fall back to reflection for the types not listed. Since a compile run may
+ * see only part of a module, as incremental builds do, or share its output directory with other
+ * compilers, the entries of an existing index are kept, except those of the types compiled again
+ * and those whose class file is gone, like the classes whose source was deleted.
+ * <p>
+ * The processor is registered as a service, so adding this library to the compile class path is
+ * enough to run it.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+@SupportedAnnotationTypes("*")
+public class AnnotationIndexProcessor extends AbstractProcessor
+{
+    private final Set<String> lines = new TreeSet<String>();
+
+    /** The binary names of the types compiled in this run */
+    private final Set<String> processed = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv)
+    {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements()))
+            addProcessed(type);
+
+        for (TypeElement annotation : annotations)
+        {
+            if (annotation.getAnnotation(Indexed.class) == null)
+                continue;
+
+            String name = binaryName(annotation);
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                switch (element.getKind())
+                {
+                case CLASS:
+                case INTERFACE:
+                case ENUM:
+                case ANNOTATION_TYPE:
+                    if (isDeclared(element, annotation))
+                        lines.add(name + " T " + binaryName((TypeElement) element));
+                    break;
+                case FIELD:
+                case ENUM_CONSTANT:
+                    lines.add(name + " F " + binaryName((TypeElement) element.getEnclosingElement()) + " "
+                            + element.getSimpleName());
+                    break;
+                case METHOD:
+                    lines.add(name + " M " + binaryName((TypeElement) element.getEnclosingElement()) + " "
+                            + signature((ExecutableElement) element));
+                    break;
+                default:
+                    break; // constructors, parameters and packages are not indexed
+                }
+            }
+        }
+
+        if (roundEnv.processingOver())
+            write();
+
+        return false; // never claims the annotations
+    }
+
+    private void addProcessed(final TypeElement type)
+    {
+        String name = binaryName(type);
+        processed.add(name);
+        lines.add("C " + name);
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            addProcessed(nested);
+    }
+
+    /**
+     * Tells whether the annotation is declared on the element rather than inherited.
+     */
+    private boolean isDeclared(final Element element, final TypeElement annotation)
+    {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors())
+        {
+            if (mirror.getAnnotationType().asElement().equals(annotation))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Keeps the entries of the existing index whose types were not compiled in this run but still
+     * have a class file.
+     */
+    private void merge()
+    {
+        try
+        {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    AnnotationIndex.RESOURCE);
+
+            try (Reader in = existing.openReader(true))
+            {
+                BufferedReader reader = new BufferedReader(in);
+                if (!AnnotationIndex.HEADER.equals(reader.readLine()))
+                    return; // unknown layout; rebuilt from scratch
+
+                Map<String, Boolean> exists = new HashMap<String, Boolean>();
+
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] tokens = line.split(" ");
+                    String type = tokens.length == 2 ? tokens[1] : tokens.length >= 3 ? tokens[2] : null;
+                    if (type == null || processed.contains(type))
+                        continue;
+
+                    Boolean found = exists.get(type);
+                    if (found == null)
+                        exists.put(type, found = classFileExists(type));
+                    if (found)
+                        lines.add(line);
+                }
+            }
+        }
+        catch (FileNotFoundException | NoSuchFileException e)
+        {
+            // first run; nothing to keep
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    String.format("Could not read [%s]; rebuilding it: %s", AnnotationIndex.RESOURCE, e.getMessage()));
+        }
+    }
+
+    /**
+     * Tells whether the output directory still has the class file of the given type.
+     */
+    private boolean classFileExists(final String type)
+    {
+        int dot = type.lastIndexOf('.');
+        try
+        {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT,
+                    dot < 0 ? "" : type.substring(0, dot), type.substring(dot + 1) + ".class");
+
+            file.openInputStream().close();
+            return true;
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    private void write()
+    {
+        merge();
+
+        try
+        {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    AnnotationIndex.RESOURCE);
+
+            try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8))
+            {
+                writer.write(AnnotationIndex.HEADER);
+                writer.write('\n');
+                for (String line : lines)
+                {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    String.format("Could not write [%s]: %s", AnnotationIndex.RESOURCE, e.getMessage()));
+        }
+    }
+
+    private String binaryName(final TypeElement type)
+    {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Returns the method name followed by its erased parameter types as {@link Class#getTypeName()}
+     * spells them.
+     */
+    private String signature(final ExecutableElement method)
+    {
+        StringBuilder sb = new StringBuilder(method.getSimpleName()).append('(');
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++)
+        {
+            if (i > 0)
+                sb.append(',');
+            sb.append(typeName(processingEnv.getTypeUtils().erasure(parameters.get(i).asType())));
+        }
+
+        return sb.append(')').toString();
+    }
+
+    private String typeName(final TypeMirror type)
+    {
+        switch (type.getKind())
+        {
+        case ARRAY:
+            return typeName(((ArrayType) type).getComponentType()) + "[]";
+        case DECLARED:
+            return binaryName((TypeElement) ((DeclaredType) type).asElement());
+        default:
+            return type.toString(); // primitives
+        }
+    }
+}
\ No newline at end of file
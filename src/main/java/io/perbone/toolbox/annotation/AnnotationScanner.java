@@ -23,12 +23,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Annotation scanner helper class.
@@ -38,15 +33,6 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class AnnotationScanner
 {
-    /** Cache of scanned types */
-    private static final Map<Class<?>, Set<Annotation>> markedTypes = new ConcurrentHashMap<Class<?>, Set<Annotation>>();
-
-    /** Cache of scanned fields */
-    private static final Map<Class<?>, Map<Class<? extends Annotation>, List<Field>>> annotatedFields = new ConcurrentHashMap<Class<?>, Map<Class<? extends Annotation>, List<Field>>>();
-
-    /** Cache of scanned methods */
-    private static final Map<Class<?>, Map<Class<? extends Annotation>, List<Method>>> annotatedMethods = new ConcurrentHashMap<Class<?>, Map<Class<? extends Annotation>, List<Method>>>();
-
     /**
      * 
      * @param annotationClass
@@ -59,6 +45,8 @@ public class AnnotationScanner
     }
 
     /**
+     * Deep lookups search the superclasses and all superinterfaces too, as described in
+     * {@link #getAnnotation(Class, Class, boolean)}.
      * 
      * @param annotationClass
      * @param deep
@@ -76,31 +64,7 @@ public class AnnotationScanner
         if (!deep)
             return type.isAnnotationPresent(annotationClass);
 
-        Class<?> clazz = type;
-        while (clazz != null)
-        {
-            Set<Annotation> ann = markedTypes.get(clazz);
-            if (ann != null)
-            {
-                for (Annotation a : ann)
-                {
-                    if (a.annotationType().equals(annotationClass))
-                        return true;
-                }
-            }
-
-            if (clazz.isAnnotationPresent(annotationClass))
-            {
-                Set<Annotation> s = markedTypes.containsKey(clazz) ? markedTypes.get(clazz) : new HashSet<Annotation>();
-                s.add(clazz.getAnnotation(annotationClass));
-                markedTypes.put(clazz, s);
-                return true;
-            }
-
-            clazz = clazz.getSuperclass();
-        }
-
-        return false;
+        return ClassIndex.of(type).annotation(annotationClass) != null;
     }
 
     /**
@@ -117,6 +81,9 @@ public class AnnotationScanner
     }
 
     /**
+     * Deep lookups search the superclasses and all superinterfaces too. The nearest annotation
+     * wins: the type own ones first, then its superclass hierarchy, then its interfaces in
+     * declaration order, each of them resolved the same way. Every class is resolved only once.
      * 
      * @param type
      * @param annotationClass
@@ -124,7 +91,6 @@ public class AnnotationScanner
      * @return
      * @throws IllegalArgumentException
      */
-    @SuppressWarnings("unchecked")
     public static <T extends Annotation> T getAnnotation(final Class<?> type, final Class<T> annotationClass,
             boolean deep) throws IllegalArgumentException
     {
@@ -136,31 +102,18 @@ public class AnnotationScanner
         if (!deep)
             return type.getAnnotation(annotationClass);
 
-        if (isAnnotationPresent(type, annotationClass, deep))
-        {
-            Class<?> clazz = type;
-            while (clazz != null)
-            {
-                for (Annotation a : markedTypes.get(clazz))
-                {
-                    if (a.annotationType().equals(annotationClass))
-                        return (T) a;
-                }
-
-                clazz = clazz.getSuperclass();
-            }
-        }
-
-        return null;
+        return ClassIndex.of(type).annotation(annotationClass);
     }
 
     /**
-     * 
      * Scan Field (goes inside superclass too)
+     * <p>
+     * Every class is scanned only once for all annotation types; later calls are served from its
+     * index.
      * 
      * @param type
      * @param annotationClass
-     * @return
+     * @return an immutable list of the annotated fields, declared ones first
      * @throws IllegalArgumentException
      */
     public static List<Field> scanFields(final Class<?> type, final Class<? extends Annotation> annotationClass)
@@ -171,44 +124,31 @@ public class AnnotationScanner
         if (annotationClass == null)
             throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        List<Field> fields = null;
-
-        Map<Class<? extends Annotation>, List<Field>> map = annotatedFields.get(type);
-        if (map != null)
-            fields = map.get(annotationClass);
-
-        /** Cache miss, scan all fields (expensive operation) */
-        if (fields == null)
-        {
-            /** Scan types fields */
-            fields = new ArrayList<Field>();
-
-            for (Field f : type.getDeclaredFields())
-            {
-                if (f.isAnnotationPresent(annotationClass))
-                {
-                    f.setAccessible(true);
-
-                    fields.add(f);
-                }
-            }
-
-            final Class<?> superClazz = type.getSuperclass();
-            if (superClazz != null)
-            {
-                fields.addAll(scanFields(superClazz, annotationClass));
-            }
+        return ClassIndex.of(type).fields(annotationClass);
+    }
 
-            /** Cache it */
-            if (!fields.isEmpty() && map == null)
-            {
-                map = new HashMap<Class<? extends Annotation>, List<Field>>();
-                map.put(annotationClass, fields);
-                annotatedFields.put(type, map);
-            }
-        }
+    /**
+     * Scan Field (goes inside superclass too) returning accessors wrapping the accessible fields
+     * <p>
+     * Accessors are created once per class and annotation type; reading and writing through them
+     * skips the per call access checks of reflection, and their primitive getters and setters avoid
+     * boxing.
+     * 
+     * @param type
+     * @param annotationClass
+     * @return an immutable list of accessors of the annotated fields, declared ones first
+     * @throws IllegalArgumentException
+     * @since 0.6.0
+     */
+    public static List<FieldAccessor> scanFieldAccessors(final Class<?> type,
+            final Class<? extends Annotation> annotationClass) throws IllegalArgumentException
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type parameter cannot be null");
+        if (annotationClass == null)
+            throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        return fields;
+        return ClassIndex.of(type).fieldAccessors(annotationClass);
     }
 
     /**
@@ -246,10 +186,15 @@ public class AnnotationScanner
     }
 
     /**
+     * Returns the given annotation when present on the field, either directly or as a
+     * meta-annotation, at any depth, of one of the field annotations.
+     * <p>
+     * Meta-annotations are resolved once per annotation type; later calls cost one hash probe per
+     * field annotation.
      * 
      * @param field
      * @param annotationClass
-     * @return
+     * @return the annotation or null if it's not present
      * @throws IllegalArgumentException
      */
     public static <T extends Annotation> T getDeepAnnotation(final Field field, final Class<T> annotationClass)
@@ -260,32 +205,42 @@ public class AnnotationScanner
         if (annotationClass == null)
             throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        T annotation = field.getAnnotation(annotationClass);
-
-        if (annotation == null)
-        {
-            for (Annotation a : field.getAnnotations())
-            {
-                if (a.annotationType().isAnnotationPresent(annotationClass))
-                {
-                    annotation = a.annotationType().getAnnotation(annotationClass);
-                    break;
-                }
-            }
+        return MetaAnnotations.find(field, annotationClass);
+    }
 
-        }
+    /**
+     * Returns the given annotation when present on the method, either directly or as a
+     * meta-annotation, at any depth, of one of the method annotations.
+     * 
+     * @param method
+     * @param annotationClass
+     * @return the annotation or null if it's not present
+     * @throws IllegalArgumentException
+     * @since 0.6.0
+     */
+    public static <T extends Annotation> T getDeepAnnotation(final Method method, final Class<T> annotationClass)
+            throws IllegalArgumentException
+    {
+        if (method == null)
+            throw new IllegalArgumentException("method parameter cannot be null");
+        if (annotationClass == null)
+            throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        return annotation;
+        return MetaAnnotations.find(method, annotationClass);
     }
 
     /**
+     * Returns the given annotation when present on the type, either directly or as a
+     * meta-annotation, at any depth, of one of the type annotations; inherited annotations
+     * included.
      * 
      * @param type
      * @param annotationClass
-     * @return
+     * @return the annotation or null if it's not present
      * @throws IllegalArgumentException
+     * @since 0.6.0
      */
-    public static List<Method> scanMethods(final Class<?> type, final Class<? extends Annotation> annotationClass)
+    public static <T extends Annotation> T getDeepAnnotation(final Class<?> type, final Class<T> annotationClass)
             throws IllegalArgumentException
     {
         if (type == null)
@@ -293,42 +248,52 @@ public class AnnotationScanner
         if (annotationClass == null)
             throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        List<Method> methods = null;
-
-        Map<Class<? extends Annotation>, List<Method>> map = annotatedMethods.get(type);
-        if (map != null)
-            methods = map.get(annotationClass);
-
-        /** Cache miss, scan all methods(expensive operation) */
-        if (methods == null)
-        {
-            /** Scan type's methods */
-            methods = new ArrayList<Method>();
-            for (Method m : type.getDeclaredMethods())
-            {
-                if (m.isAnnotationPresent(annotationClass))
-                {
-                    m.setAccessible(true);
+        return MetaAnnotations.find(type, annotationClass);
+    }
 
-                    methods.add(m);
-                }
-            }
+    /**
+     * Scan Method (goes inside superclass too)
+     * <p>
+     * Every class is scanned only once for all annotation types; later calls are served from its
+     * index.
+     * 
+     * @param type
+     * @param annotationClass
+     * @return an immutable list of the annotated methods, declared ones first
+     * @throws IllegalArgumentException
+     */
+    public static List<Method> scanMethods(final Class<?> type, final Class<? extends Annotation> annotationClass)
+            throws IllegalArgumentException
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type parameter cannot be null");
+        if (annotationClass == null)
+            throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-            final Class<?> superClazz = type.getSuperclass();
-            if (superClazz != null)
-            {
-                methods.addAll(scanMethods(superClazz, annotationClass));
-            }
+        return ClassIndex.of(type).methods(annotationClass);
+    }
 
-            /** Cache it */
-            if (!methods.isEmpty() && map == null)
-            {
-                map = new HashMap<Class<? extends Annotation>, List<Method>>();
-                map.put(annotationClass, methods);
-                annotatedMethods.put(type, map);
-            }
-        }
+    /**
+     * Scan Method (goes inside superclass too) returning accessors calling the methods through
+     * functional interfaces bound by {@link java.lang.invoke.LambdaMetafactory}
+     * <p>
+     * Accessors are created once per class and annotation type; methods the metafactory cannot bind
+     * are invoked through reflection.
+     * 
+     * @param type
+     * @param annotationClass
+     * @return an immutable list of accessors of the annotated methods, declared ones first
+     * @throws IllegalArgumentException
+     * @since 0.6.0
+     */
+    public static List<MethodAccessor> scanMethodAccessors(final Class<?> type,
+            final Class<? extends Annotation> annotationClass) throws IllegalArgumentException
+    {
+        if (type == null)
+            throw new IllegalArgumentException("type parameter cannot be null");
+        if (annotationClass == null)
+            throw new IllegalArgumentException("annotationClass parameter cannot be null");
 
-        return methods;
+        return ClassIndex.of(type).methodAccessors(annotationClass);
     }
 }
\ No newline at end of file
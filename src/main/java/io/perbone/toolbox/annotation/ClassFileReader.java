@@ -0,0 +1,253 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal class-file reader looking for class level runtime visible annotations.
+ * <p>
+ * It walks the constant pool, skips interfaces, fields and methods, and reads only the
+ * {@code RuntimeVisibleAnnotations} attribute of the class itself. Nothing is loaded nor
+ * initialized. Whenever the constant pool has no entry equal to the annotation descriptor the
+ * class is rejected right after the constant pool, which is the common case.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class ClassFileReader
+{
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private ClassFileReader()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the binary name of the class in the given buffer if it is annotated with the given
+     * annotation.
+     * 
+     * @param buffer
+     *            the class file content, from its position to its limit; the position is consumed
+     * @param descriptor
+     *            the annotation type descriptor, e.g. {@code Lcom/acme/Marker;}, as UTF-8 bytes
+     * 
+     * @return the class binary name or {@code null} if the class is not annotated or the buffer
+     *         is not a valid class file
+     */
+    static String annotatedClassName(final ByteBuffer buffer, final byte[] descriptor)
+    {
+        try
+        {
+            return read(buffer, descriptor);
+        }
+        catch (RuntimeException e)
+        {
+            return null; // truncated or malformed class file
+        }
+    }
+
+    /**
+     * Encodes the descriptor of the given annotation type name.
+     * 
+     * @param annotationName
+     *            the annotation binary name
+     * 
+     * @return the descriptor as UTF-8 bytes
+     */
+    static byte[] descriptor(final String annotationName)
+    {
+        return ("L" + annotationName.replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(final ByteBuffer buffer, final byte[] descriptor)
+    {
+        if (buffer.getInt() != MAGIC)
+            return null;
+        buffer.position(buffer.position() + 4); // minor and major versions
+
+        /* Constant pool; only the offsets of the utf8 and class entries matter */
+        int count = buffer.getShort() & 0xffff;
+        int[] offsets = new int[count];
+        int descriptorIndex = -1;
+        for (int i = 1; i < count; i++)
+        {
+            int tag = buffer.get();
+            offsets[i] = buffer.position();
+            switch (tag)
+            {
+            case 1: // Utf8
+                int length = buffer.getShort() & 0xffff;
+                if (descriptorIndex < 0 && equals(buffer, buffer.position(), length, descriptor))
+                    descriptorIndex = i;
+                buffer.position(buffer.position() + length);
+                break;
+            case 7: // Class
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                buffer.position(buffer.position() + 2);
+                break;
+            case 15: // MethodHandle
+                buffer.position(buffer.position() + 3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                buffer.position(buffer.position() + 4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                buffer.position(buffer.position() + 8);
+                i++; // takes two slots
+                break;
+            default:
+                return null;
+            }
+        }
+
+        /* Fast path: the descriptor is not even referenced */
+        if (descriptorIndex < 0)
+            return null;
+
+        buffer.position(buffer.position() + 2); // access flags
+        int thisClass = buffer.getShort() & 0xffff;
+        buffer.position(buffer.position() + 2); // super class
+        int interfaces = buffer.getShort() & 0xffff;
+        buffer.position(buffer.position() + 2 * interfaces);
+
+        skipMembers(buffer); // fields
+        skipMembers(buffer); // methods
+
+        int attributes = buffer.getShort() & 0xffff;
+        for (int a = 0; a < attributes; a++)
+        {
+            int name = buffer.getShort() & 0xffff;
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+
+            if (isUtf8(buffer, offsets[name], RUNTIME_VISIBLE_ANNOTATIONS))
+            {
+                int annotations = buffer.getShort() & 0xffff;
+                for (int i = 0; i < annotations; i++)
+                {
+                    if ((buffer.getShort() & 0xffff) == descriptorIndex)
+                    {
+                        int className = buffer.getShort(offsets[thisClass]) & 0xffff;
+                        return utf8(buffer, offsets[className]).replace('/', '.');
+                    }
+                    skipElementValuePairs(buffer);
+                }
+            }
+
+            buffer.position(end);
+        }
+
+        return null;
+    }
+
+    private static void skipMembers(final ByteBuffer buffer)
+    {
+        int count = buffer.getShort() & 0xffff;
+        for (int i = 0; i < count; i++)
+        {
+            buffer.position(buffer.position() + 6); // access flags, name and descriptor
+            int attributes = buffer.getShort() & 0xffff;
+            for (int a = 0; a < attributes; a++)
+            {
+                buffer.position(buffer.position() + 2); // attribute name
+                int length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+            }
+        }
+    }
+
+    private static void skipElementValuePairs(final ByteBuffer buffer)
+    {
+        int pairs = buffer.getShort() & 0xffff;
+        for (int p = 0; p < pairs; p++)
+        {
+            buffer.position(buffer.position() + 2); // element name
+            skipElementValue(buffer);
+        }
+    }
+
+    private static void skipElementValue(final ByteBuffer buffer)
+    {
+        int tag = buffer.get();
+        switch (tag)
+        {
+        case 'e':
+            buffer.position(buffer.position() + 4);
+            break;
+        case '@':
+            buffer.position(buffer.position() + 2);
+            skipElementValuePairs(buffer);
+            break;
+        case '[':
+            int values = buffer.getShort() & 0xffff;
+            for (int i = 0; i < values; i++)
+                skipElementValue(buffer);
+            break;
+        default: // constants and class values
+            buffer.position(buffer.position() + 2);
+            break;
+        }
+    }
+
+    private static boolean isUtf8(final ByteBuffer buffer, final int offset, final byte[] value)
+    {
+        return equals(buffer, offset + 2, buffer.getShort(offset) & 0xffff, value);
+    }
+
+    private static boolean equals(final ByteBuffer buffer, final int offset, final int length, final byte[] value)
+    {
+        if (length != value.length)
+            return false;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (buffer.get(offset + i) != value[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static String utf8(final ByteBuffer buffer, final int offset)
+    {
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xffff];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(offset + 2 + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,428 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the annotations of one class and of its annotated members, supertypes included.
+ * <p>
+ * Each class is scanned once, for all annotation types at the same time, and its index is held in
+ * a {@link ClassValue} so it lives as long as the class itself and never pins a class loader.
+ * <p>
+ * Members carrying an {@link Indexed} annotation are looked up by name in the build-time index of
+ * the class location when it lists the class, so classes only queried for indexed annotations are
+ * never scanned. Classes the index does not list, such as those compiled without the processor,
+ * are scanned by reflection. A stale index, naming a member that does not exist anymore, is
+ * ignored.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class ClassIndex
+{
+    private static final ClassValue<ClassIndex> INDEXES = new ClassValue<ClassIndex>()
+    {
+        @Override
+        protected ClassIndex computeValue(final Class<?> type)
+        {
+            return new ClassIndex(type);
+        }
+    };
+
+    private final Class<?> type;
+
+    /** The superclass index or null */
+    private final ClassIndex parent;
+
+    /** The build-time index of the class location or null */
+    private final AnnotationIndex index;
+
+    /** The reflective index; built on first use */
+    private volatile Members members;
+
+    /** The annotations of the class and all its supertypes, nearest first; built on first use */
+    private volatile Map<Class<? extends Annotation>, Annotation> hierarchy;
+
+    /** Indexed annotation lookups resolved so far */
+    private final ConcurrentHashMap<Class<? extends Annotation>, List<Field>> indexedFields;
+
+    /** Indexed annotation lookups resolved so far */
+    private final ConcurrentHashMap<Class<? extends Annotation>, List<Method>> indexedMethods;
+
+    /** Field accessors created so far */
+    private final ConcurrentHashMap<Class<? extends Annotation>, List<FieldAccessor>> fieldAccessors;
+
+    /** Method accessors created so far */
+    private final ConcurrentHashMap<Class<? extends Annotation>, List<MethodAccessor>> methodAccessors;
+
+    /**
+     * The immutable reflective index.
+     */
+    private static final class Members
+    {
+        /** Annotated fields by annotation type; declared fields first, then the superclass ones */
+        final Map<Class<? extends Annotation>, List<Field>> fields;
+
+        /** Annotated methods by annotation type; declared methods first, then the superclass ones */
+        final Map<Class<? extends Annotation>, List<Method>> methods;
+
+        Members(final Class<?> type, final Members parent)
+        {
+            Map<Class<? extends Annotation>, List<Field>> f = new HashMap<Class<? extends Annotation>, List<Field>>();
+            for (Field field : type.getDeclaredFields())
+                add(f, field, field.getDeclaredAnnotations());
+            if (parent != null)
+                merge(f, parent.fields);
+            this.fields = freeze(f);
+
+            Map<Class<? extends Annotation>, List<Method>> m = new HashMap<Class<? extends Annotation>, List<Method>>();
+            for (Method method : type.getDeclaredMethods())
+                add(m, method, method.getDeclaredAnnotations());
+            if (parent != null)
+                merge(m, parent.methods);
+            this.methods = freeze(m);
+        }
+    }
+
+    private ClassIndex(final Class<?> type)
+    {
+        this.type = type;
+        this.parent = type.getSuperclass() == null ? null : of(type.getSuperclass());
+        AnnotationIndex located = AnnotationIndex.of(type);
+        this.index = located != null && located.covers(type.getName()) ? located : null;
+        this.indexedFields = index == null ? null
+                : new ConcurrentHashMap<Class<? extends Annotation>, List<Field>>();
+        this.indexedMethods = index == null ? null
+                : new ConcurrentHashMap<Class<? extends Annotation>, List<Method>>();
+        this.fieldAccessors = new ConcurrentHashMap<Class<? extends Annotation>, List<FieldAccessor>>();
+        this.methodAccessors = new ConcurrentHashMap<Class<? extends Annotation>, List<MethodAccessor>>();
+    }
+
+    /**
+     * Returns the index of the given class, building it on first use.
+     * 
+     * @param type
+     *            the class to index
+     * 
+     * @return the class index
+     */
+    static ClassIndex of(final Class<?> type)
+    {
+        return INDEXES.get(type);
+    }
+
+    /**
+     * Returns the fields carrying the given annotation.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return an immutable list of fields; empty if there is none
+     */
+    List<Field> fields(final Class<? extends Annotation> annotationClass)
+    {
+        if (index != null && annotationClass.isAnnotationPresent(Indexed.class))
+        {
+            List<Field> list = indexedFields.get(annotationClass);
+            if (list == null)
+            {
+                list = indexedFields(annotationClass);
+                indexedFields.put(annotationClass, list);
+            }
+            return list;
+        }
+
+        return get(members().fields, annotationClass);
+    }
+
+    /**
+     * Returns the methods carrying the given annotation.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return an immutable list of methods; empty if there is none
+     */
+    List<Method> methods(final Class<? extends Annotation> annotationClass)
+    {
+        if (index != null && annotationClass.isAnnotationPresent(Indexed.class))
+        {
+            List<Method> list = indexedMethods.get(annotationClass);
+            if (list == null)
+            {
+                list = indexedMethods(annotationClass);
+                indexedMethods.put(annotationClass, list);
+            }
+            return list;
+        }
+
+        return get(members().methods, annotationClass);
+    }
+
+    /**
+     * Returns the accessors of the fields carrying the given annotation, creating them on first use.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return an immutable list of field accessors; empty if there is none
+     */
+    List<FieldAccessor> fieldAccessors(final Class<? extends Annotation> annotationClass)
+    {
+        List<FieldAccessor> list = fieldAccessors.get(annotationClass);
+        if (list == null)
+        {
+            List<Field> fields = fields(annotationClass);
+            List<FieldAccessor> accessors = new ArrayList<FieldAccessor>(fields.size());
+            for (Field field : fields)
+                accessors.add(FieldAccessor.of(field));
+
+            list = Collections.unmodifiableList(accessors);
+            fieldAccessors.put(annotationClass, list);
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns the accessors of the methods carrying the given annotation, creating them on first
+     * use.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return an immutable list of method accessors; empty if there is none
+     */
+    List<MethodAccessor> methodAccessors(final Class<? extends Annotation> annotationClass)
+    {
+        List<MethodAccessor> list = methodAccessors.get(annotationClass);
+        if (list == null)
+        {
+            List<Method> methods = methods(annotationClass);
+            List<MethodAccessor> accessors = new ArrayList<MethodAccessor>(methods.size());
+            for (Method method : methods)
+                accessors.add(MethodAccessor.of(method));
+
+            list = Collections.unmodifiableList(accessors);
+            methodAccessors.put(annotationClass, list);
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns the given annotation when present on the class or on any of its superclasses and
+     * superinterfaces.
+     * <p>
+     * The nearest one wins: the class own annotations first, then the superclass hierarchy, then
+     * the interfaces in declaration order, each of them resolved the same way.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return the annotation or null if it's not present
+     */
+    <T extends Annotation> T annotation(final Class<T> annotationClass)
+    {
+        return annotationClass.cast(hierarchy().get(annotationClass));
+    }
+
+    private Map<Class<? extends Annotation>, Annotation> hierarchy()
+    {
+        Map<Class<? extends Annotation>, Annotation> h = hierarchy;
+        if (h == null)
+        {
+            synchronized (this)
+            {
+                h = hierarchy;
+                if (h == null)
+                    hierarchy = h = resolveHierarchy();
+            }
+        }
+
+        return h;
+    }
+
+    private Map<Class<? extends Annotation>, Annotation> resolveHierarchy()
+    {
+        Map<Class<? extends Annotation>, Annotation> map = new LinkedHashMap<Class<? extends Annotation>, Annotation>();
+        for (Annotation a : type.getDeclaredAnnotations())
+            map.put(a.annotationType(), a);
+
+        if (parent != null)
+            inherit(map, parent.hierarchy());
+        for (Class<?> i : type.getInterfaces())
+            inherit(map, of(i).hierarchy());
+
+        return map.isEmpty() ? Collections.<Class<? extends Annotation>, Annotation> emptyMap()
+                : Collections.unmodifiableMap(map);
+    }
+
+    private static void inherit(final Map<Class<? extends Annotation>, Annotation> map,
+            final Map<Class<? extends Annotation>, Annotation> supertype)
+    {
+        for (Map.Entry<Class<? extends Annotation>, Annotation> entry : supertype.entrySet())
+        {
+            if (!map.containsKey(entry.getKey()))
+                map.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Members members()
+    {
+        Members m = members;
+        if (m == null)
+        {
+            synchronized (this)
+            {
+                m = members;
+                if (m == null)
+                    members = m = new Members(type, parent == null ? null : parent.members());
+            }
+        }
+
+        return m;
+    }
+
+    private List<Field> indexedFields(final Class<? extends Annotation> annotationClass)
+    {
+        List<Field> list = new ArrayList<Field>();
+        for (String name : index.fields(type.getName(), annotationClass.getName()))
+        {
+            try
+            {
+                Field field = type.getDeclaredField(name);
+                if (!field.isAnnotationPresent(annotationClass))
+                    return get(members().fields, annotationClass); // stale index
+                add(list, field);
+            }
+            catch (NoSuchFieldException e)
+            {
+                return get(members().fields, annotationClass); // stale index
+            }
+        }
+
+        if (parent != null)
+            list.addAll(parent.fields(annotationClass));
+
+        return list.isEmpty() ? Collections.<Field> emptyList() : Collections.unmodifiableList(list);
+    }
+
+    private List<Method> indexedMethods(final Class<? extends Annotation> annotationClass)
+    {
+        List<String> signatures = index.methods(type.getName(), annotationClass.getName());
+
+        List<Method> list = new ArrayList<Method>();
+        if (!signatures.isEmpty())
+        {
+            for (Method method : type.getDeclaredMethods())
+            {
+                if (signatures.contains(AnnotationIndex.signature(method.getName(), method.getParameterTypes()))
+                        && !method.isBridge())
+                    add(list, method);
+            }
+
+            if (list.size() != signatures.size())
+                return get(members().methods, annotationClass); // stale index
+        }
+
+        if (parent != null)
+            list.addAll(parent.methods(annotationClass));
+
+        return list.isEmpty() ? Collections.<Method> emptyList() : Collections.unmodifiableList(list);
+    }
+
+    private static <M> List<M> get(final Map<Class<? extends Annotation>, List<M>> map,
+            final Class<? extends Annotation> annotationClass)
+    {
+        List<M> list = map.get(annotationClass);
+        return list != null ? list : Collections.<M> emptyList();
+    }
+
+    private static <M extends AccessibleObject> void add(final List<M> list, final M member)
+    {
+        setAccessible(member);
+        list.add(member);
+    }
+
+    private static <M extends AccessibleObject> void add(final Map<Class<? extends Annotation>, List<M>> map,
+            final M member, final Annotation[] annotations)
+    {
+        if (annotations.length == 0)
+            return;
+
+        setAccessible(member);
+
+        for (Annotation a : annotations)
+        {
+            List<M> list = map.get(a.annotationType());
+            if (list == null)
+                map.put(a.annotationType(), list = new ArrayList<M>());
+            list.add(member);
+        }
+    }
+
+    private static void setAccessible(final AccessibleObject member)
+    {
+        try
+        {
+            member.setAccessible(true);
+        }
+        catch (RuntimeException e)
+        {
+            // not accessible (e.g. non-open module); callers will get the usual access errors
+        }
+    }
+
+    private static <M> void merge(final Map<Class<? extends Annotation>, List<M>> map,
+            final Map<Class<? extends Annotation>, List<M>> parent)
+    {
+        for (Map.Entry<Class<? extends Annotation>, List<M>> entry : parent.entrySet())
+        {
+            List<M> list = map.get(entry.getKey());
+            if (list == null)
+                map.put(entry.getKey(), list = new ArrayList<M>());
+            list.addAll(entry.getValue());
+        }
+    }
+
+    private static <M> Map<Class<? extends Annotation>, List<M>> freeze(
+            final Map<Class<? extends Annotation>, List<M>> map)
+    {
+        if (map.isEmpty())
+            return Collections.emptyMap();
+
+        for (Map.Entry<Class<? extends Annotation>, List<M>> entry : map.entrySet())
+            entry.setValue(Collections.unmodifiableList(new ArrayList<M>(entry.getValue())));
+
+        return Collections.unmodifiableMap(map);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,578 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the classes carrying a given annotation by reading class files straight from jars and
+ * directories, without loading them.
+ * <p>
+ * Loading a class just to ask whether it is annotated is slow and runs its static initializer.
+ * This scanner instead parses the class-file constant pool and the class level
+ * {@code RuntimeVisibleAnnotations} attribute, and returns the names of the matching classes;
+ * it's up to the caller to load them. Only annotations with runtime retention are visible this
+ * way, the same ones reflection sees.
+ * <p>
+ * Only annotations declared on the class itself count: the subclasses of an annotated class are
+ * not returned, even for an {@link java.lang.annotation.Inherited} annotation, whether a root is
+ * answered from its build-time index or from its class files.
+ * <p>
+ * Jar files are memory-mapped and their central directory is read in place. Stored entries are
+ * parsed right from the mapping while deflated entries, the common case, are inflated into a
+ * reused buffer. Jars the mapping reader does not handle, like ZIP64 archives, fall back to
+ * {@link ZipFile}.
+ * <p>
+ * The scan runs on a {@link ForkJoinPool}, the common pool unless another one is given. Each jar
+ * file and each directory is a task of its own, and directory tasks fork a subtask per
+ * subdirectory, so a class path made of hundreds of jars keeps every worker busy. Results are
+ * merged as tasks are joined, without locks.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class ClasspathScanner
+{
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int CEN_SIGNATURE = 0x02014b50;
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_SIZE = 22;
+
+    private static final int CEN_SIZE = 46;
+
+    private static final int LOC_SIZE = 30;
+
+    private static final int STORED = 0;
+
+    private static final int DEFLATED = 8;
+
+    private final List<Path> roots;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a scanner over the entries of the {@code java.class.path} system property.
+     */
+    public ClasspathScanner()
+    {
+        this(classPath());
+    }
+
+    /**
+     * Creates a scanner over the given jar files and class directories.
+     * 
+     * @param roots
+     *            the jar files and class directories to scan
+     * 
+     * @throws IllegalArgumentException
+     *             if the roots are invalid
+     */
+    public ClasspathScanner(final Collection<Path> roots) throws IllegalArgumentException
+    {
+        this(roots, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a scanner over the given jar files and class directories running on the given pool.
+     * 
+     * @param roots
+     *            the jar files and class directories to scan
+     * @param pool
+     *            the pool running the scan tasks
+     * 
+     * @throws IllegalArgumentException
+     *             if either the roots or the pool is invalid
+     */
+    public ClasspathScanner(final Collection<Path> roots, final ForkJoinPool pool) throws IllegalArgumentException
+    {
+        if (roots == null || roots.contains(null))
+            throw new IllegalArgumentException("Invalid roots");
+        if (pool == null)
+            throw new IllegalArgumentException("Invalid pool");
+
+        this.roots = Collections.unmodifiableList(new ArrayList<Path>(roots));
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the jar files and class directories this scanner reads.
+     * 
+     * @return an immutable list of roots
+     */
+    public List<Path> roots()
+    {
+        return roots;
+    }
+
+    /**
+     * Returns the names of the classes annotated with the given annotation.
+     * <p>
+     * For an {@link Indexed} annotation, roots carrying a build-time index are answered from it
+     * for the classes it lists; only the class files it does not list, compiled without the
+     * processor, are read.
+     * 
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return the sorted binary names of the annotated classes
+     * 
+     * @throws IllegalArgumentException
+     *             if the annotation type is invalid
+     * @throws UncheckedIOException
+     *             if a root cannot be read
+     */
+    public Set<String> scan(final Class<? extends Annotation> annotationClass)
+            throws IllegalArgumentException, UncheckedIOException
+    {
+        if (annotationClass == null)
+            throw new IllegalArgumentException("Invalid annotation class");
+
+        return scan(annotationClass.getName(), annotationClass.isAnnotationPresent(Indexed.class));
+    }
+
+    /**
+     * Returns the names of the classes annotated with the given annotation.
+     * <p>
+     * The annotation type itself does not need to be loadable, which also means build-time indexes
+     * are never used since the annotation cannot be checked for {@link Indexed}.
+     * 
+     * @param annotationName
+     *            the annotation binary name
+     * 
+     * @return the sorted binary names of the annotated classes
+     * 
+     * @throws IllegalArgumentException
+     *             if the annotation name is invalid
+     * @throws UncheckedIOException
+     *             if a root cannot be read
+     */
+    public Set<String> scan(final String annotationName) throws IllegalArgumentException, UncheckedIOException
+    {
+        if (annotationName == null || annotationName.isEmpty())
+            throw new IllegalArgumentException("Invalid annotation name");
+
+        return scan(annotationName, false);
+    }
+
+    private Set<String> scan(final String annotationName, final boolean indexed) throws UncheckedIOException
+    {
+        byte[] descriptor = ClassFileReader.descriptor(annotationName);
+
+        List<ScanTask> tasks = new ArrayList<ScanTask>(roots.size());
+        for (Path root : roots)
+            tasks.add(new ScanTask(root, descriptor, indexed ? annotationName : null));
+
+        return new TreeSet<String>(pool.invoke(new RootsTask(tasks)));
+    }
+
+    /**
+     * Runs one task per root and merges their results.
+     */
+    private static final class RootsTask extends RecursiveTask<List<String>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ScanTask> tasks;
+
+        RootsTask(final List<ScanTask> tasks)
+        {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<String> compute()
+        {
+            invokeAll(tasks);
+
+            List<String> names = new ArrayList<String>();
+            for (ScanTask task : tasks)
+                names.addAll(task.join());
+
+            return names;
+        }
+    }
+
+    /**
+     * Scans one jar file or one directory, forking a subtask per subdirectory and per nested root.
+     * <p>
+     * Every task fills its own list and the lists are merged by the parent after joining, so no
+     * task ever shares a collection, a buffer or an inflater with another.
+     */
+    private static final class ScanTask extends RecursiveTask<List<String>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+
+        /** The jar file or class directory this task belongs to */
+        private final Path root;
+
+        private final byte[] descriptor;
+
+        /** The annotation name to look up in the root index; null for subdirectories or when not indexed */
+        private final String indexed;
+
+        /** The root index, whose listed classes are not read again; null when not indexed */
+        private final AnnotationIndex index;
+
+        ScanTask(final Path path, final byte[] descriptor, final String indexed)
+        {
+            this(path, path, descriptor, indexed, null);
+        }
+
+        private ScanTask(final Path path, final Path root, final byte[] descriptor, final String indexed,
+                final AnnotationIndex index)
+        {
+            this.path = path;
+            this.root = root;
+            this.descriptor = descriptor;
+            this.indexed = indexed;
+            this.index = index;
+        }
+
+        @Override
+        protected List<String> compute() throws UncheckedIOException
+        {
+            try
+            {
+                if (indexed != null)
+                {
+                    AnnotationIndex rootIndex = AnnotationIndex.load(path);
+                    if (rootIndex != null)
+                    {
+                        List<String> names = new ArrayList<String>(rootIndex.types(indexed));
+                        names.addAll(new ScanTask(path, root, descriptor, null, rootIndex).compute());
+                        return names;
+                    }
+                }
+
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attrs.isDirectory())
+                    return scanDirectory();
+                if (attrs.isRegularFile())
+                    return scanJar(path, descriptor, index);
+
+                return Collections.emptyList();
+            }
+            catch (NoSuchFileException e)
+            {
+                return Collections.emptyList(); // missing roots are ignored like the class loader does
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(String.format("Could not scan [%s]", path), e);
+            }
+        }
+
+        private List<String> scanDirectory() throws IOException
+        {
+            List<String> names = new ArrayList<String>();
+            List<ScanTask> subtasks = new ArrayList<ScanTask>();
+            ByteBuffer buffer = null;
+
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(path))
+            {
+                for (Path file : ds)
+                {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+
+                    if (attrs.isDirectory())
+                    {
+                        ScanTask subtask = new ScanTask(file, root, descriptor, null, index);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                    else if (attrs.isRegularFile() && isClassFile(file.getFileName().toString())
+                            && !isIndexed(index, root.relativize(file).toString().replace(File.separatorChar, '/')))
+                    {
+                        buffer = read(file, buffer, (int) attrs.size());
+                        String name = ClassFileReader.annotatedClassName(buffer, descriptor);
+                        if (name != null)
+                            names.add(name);
+                    }
+                }
+            }
+
+            for (ScanTask subtask : subtasks)
+                names.addAll(subtask.join());
+
+            return names;
+        }
+    }
+
+    private static List<String> scanJar(final Path jar, final byte[] descriptor, final AnnotationIndex index)
+            throws IOException
+    {
+        try (FileChannel fc = FileChannel.open(jar, StandardOpenOption.READ))
+        {
+            if (fc.size() <= Integer.MAX_VALUE)
+            {
+                MappedByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+                List<String> names = scanMappedJar(mapped, descriptor, index);
+                if (names != null)
+                    return names;
+            }
+        }
+
+        return scanZipFile(jar, descriptor, index);
+    }
+
+    /**
+     * Reads the central directory of a mapped jar in place.
+     * 
+     * @return the annotated class names or {@code null} if the archive layout is not supported
+     */
+    private static List<String> scanMappedJar(final MappedByteBuffer mapped, final byte[] descriptor,
+            final AnnotationIndex index)
+    {
+        ByteBuffer zip = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = -1;
+        for (int i = zip.limit() - EOCD_SIZE; i >= Math.max(0, zip.limit() - EOCD_SIZE - 0xffff); i--)
+        {
+            if (zip.getInt(i) == EOCD_SIGNATURE)
+            {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0)
+            return null;
+
+        int entries = zip.getShort(eocd + 10) & 0xffff;
+        long offset = zip.getInt(eocd + 16) & 0xffffffffL;
+        if (entries == 0xffff || offset >= eocd)
+            return null; // ZIP64 or prefixed archive
+
+        List<String> names = new ArrayList<String>();
+        Inflater inflater = new Inflater(true);
+        byte[] input = new byte[0];
+        byte[] output = new byte[8192];
+        try
+        {
+            int cen = (int) offset;
+            for (int e = 0; e < entries; e++)
+            {
+                if (zip.getInt(cen) != CEN_SIGNATURE)
+                    return null;
+
+                int flags = zip.getShort(cen + 8) & 0xffff;
+                int method = zip.getShort(cen + 10) & 0xffff;
+                long compressed = zip.getInt(cen + 20) & 0xffffffffL;
+                long size = zip.getInt(cen + 24) & 0xffffffffL;
+                int nameLength = zip.getShort(cen + 28) & 0xffff;
+                int extraLength = zip.getShort(cen + 30) & 0xffff;
+                int commentLength = zip.getShort(cen + 32) & 0xffff;
+                long loc = zip.getInt(cen + 42) & 0xffffffffL;
+
+                String entryName = entryName(zip, cen + CEN_SIZE, nameLength);
+                cen += CEN_SIZE + nameLength + extraLength + commentLength;
+
+                if (!isClassEntry(entryName) || (flags & 1) != 0 || isIndexed(index, entryName))
+                    continue; // not a class, encrypted or already answered by the index
+
+                if (loc + LOC_SIZE > eocd || zip.getInt((int) loc) != LOC_SIGNATURE)
+                    return null;
+
+                int data = (int) loc + LOC_SIZE + (zip.getShort((int) loc + 26) & 0xffff)
+                        + (zip.getShort((int) loc + 28) & 0xffff);
+                if (data + compressed > eocd)
+                    return null;
+
+                ByteBuffer content;
+                if (method == STORED)
+                {
+                    content = mapped.duplicate();
+                    content.limit(data + (int) compressed).position(data);
+                    content = content.slice();
+                }
+                else if (method == DEFLATED && size <= Integer.MAX_VALUE)
+                {
+                    if (input.length < compressed)
+                        input = new byte[(int) compressed];
+                    if (output.length < size)
+                        output = new byte[(int) size];
+
+                    ByteBuffer source = mapped.duplicate();
+                    source.position(data);
+                    source.get(input, 0, (int) compressed);
+
+                    inflater.reset();
+                    inflater.setInput(input, 0, (int) compressed);
+                    int length = inflater.inflate(output, 0, (int) size);
+                    content = ByteBuffer.wrap(output, 0, length);
+                }
+                else
+                    continue; // unsupported compression method; the class loader could not load it either
+
+                String name = ClassFileReader.annotatedClassName(content, descriptor);
+                if (name != null)
+                    names.add(name);
+            }
+        }
+        catch (DataFormatException | IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            return null;
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        return names;
+    }
+
+    private static List<String> scanZipFile(final Path jar, final byte[] descriptor, final AnnotationIndex index)
+            throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        byte[] buffer = new byte[8192];
+
+        try (ZipFile zip = new ZipFile(jar.toFile()))
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isClassEntry(entry.getName()) || isIndexed(index, entry.getName()))
+                    continue;
+
+                int length = 0;
+                try (InputStream in = zip.getInputStream(entry))
+                {
+                    int n;
+                    while ((n = in.read(buffer, length, buffer.length - length)) >= 0)
+                    {
+                        length += n;
+                        if (length == buffer.length)
+                            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+
+                String name = ClassFileReader.annotatedClassName(ByteBuffer.wrap(buffer, 0, length), descriptor);
+                if (name != null)
+                    names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Reads the whole file into the given buffer, replacing it when missing or too small.
+     */
+    private static ByteBuffer read(final Path file, final ByteBuffer buffer, final int size) throws IOException
+    {
+        ByteBuffer bb = buffer;
+        if (bb == null || bb.capacity() < size)
+            bb = ByteBuffer.allocate(Math.max(size, 8192));
+        bb.clear();
+
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            while (fc.read(bb) > 0 && bb.hasRemaining())
+                ; // keep reading
+        }
+
+        bb.flip();
+        return bb;
+    }
+
+    private static String entryName(final ByteBuffer zip, final int offset, final int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = zip.get(offset + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips module and package descriptors as well as the versioned copies of multi-release jars.
+     */
+    private static boolean isClassEntry(final String name)
+    {
+        return isClassFile(name) && !name.startsWith("META-INF/");
+    }
+
+    /**
+     * Tells whether the class file at the given root relative path is listed by the given index.
+     */
+    private static boolean isIndexed(final AnnotationIndex index, final String path)
+    {
+        return index != null
+                && index.covers(path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+    }
+
+    private static boolean isClassFile(final String name)
+    {
+        return name.endsWith(CLASS_SUFFIX) && !name.endsWith("module-info.class")
+                && !name.endsWith("package-info.class");
+    }
+
+    private static List<Path> classPath()
+    {
+        List<Path> paths = new ArrayList<Path>();
+
+        StringTokenizer st = new StringTokenizer(System.getProperty("java.class.path", ""), File.pathSeparator);
+        while (st.hasMoreTokens())
+            paths.add(Paths.get(st.nextToken()));
+
+        return paths;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transitive meta-annotation resolution.
+ * <p>
+ * The closure of an annotation type maps every annotation type reachable through its
+ * meta-annotations, at any depth, to the nearest instance found. It's computed once per
+ * annotation type, breadth first and skipping types already visited, so cycles like
+ * {@code @Documented} annotating itself are harmless; then it's held in a {@link ClassValue} and
+ * every later lookup is a single hash probe.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class MetaAnnotations
+{
+    private static final ClassValue<Map<Class<?>, Annotation>> CLOSURES = new ClassValue<Map<Class<?>, Annotation>>()
+    {
+        @Override
+        protected Map<Class<?>, Annotation> computeValue(final Class<?> type)
+        {
+            return closure(type);
+        }
+    };
+
+    private MetaAnnotations()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the given annotation when present on the element, either directly or as a
+     * meta-annotation at any depth of one of its annotations.
+     * <p>
+     * Direct annotations win; otherwise the element annotations are tried in order and, for each
+     * one, the nearest meta-annotation is returned.
+     * 
+     * @param element
+     *            the annotated element
+     * @param annotationClass
+     *            the annotation type
+     * 
+     * @return the annotation or {@code null} if it's not present
+     */
+    static <T extends Annotation> T find(final AnnotatedElement element, final Class<T> annotationClass)
+    {
+        T annotation = element.getAnnotation(annotationClass);
+        if (annotation != null)
+            return annotation;
+
+        for (Annotation a : element.getAnnotations())
+        {
+            annotation = find(a.annotationType(), annotationClass);
+            if (annotation != null)
+                return annotation;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the nearest meta-annotation of the given type reachable from the given annotation
+     * type.
+     * 
+     * @param annotationType
+     *            the annotation type whose meta-annotations are searched
+     * @param metaAnnotationClass
+     *            the meta-annotation type
+     * 
+     * @return the meta-annotation or {@code null} if it's not reachable
+     */
+    static <T extends Annotation> T find(final Class<? extends Annotation> annotationType,
+            final Class<T> metaAnnotationClass)
+    {
+        return metaAnnotationClass.cast(CLOSURES.get(annotationType).get(metaAnnotationClass));
+    }
+
+    private static Map<Class<?>, Annotation> closure(final Class<?> type)
+    {
+        Map<Class<?>, Annotation> closure = new LinkedHashMap<Class<?>, Annotation>();
+        Set<Class<?>> visited = new HashSet<Class<?>>();
+        Deque<Class<?>> queue = new ArrayDeque<Class<?>>();
+
+        visited.add(type);
+        queue.add(type);
+        while (!queue.isEmpty())
+        {
+            for (Annotation a : queue.poll().getAnnotations())
+            {
+                Class<? extends Annotation> annotationType = a.annotationType();
+                if (!closure.containsKey(annotationType))
+                    closure.put(annotationType, a);
+                if (visited.add(annotationType))
+                    queue.add(annotationType);
+            }
+        }
+
+        return closure.isEmpty() ? Collections.<Class<?>, Annotation> emptyMap()
+                : Collections.unmodifiableMap(closure);
+    }
+}
\ No newline at end of file
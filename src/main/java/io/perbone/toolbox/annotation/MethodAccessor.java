@@ -0,0 +1,418 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.annotation;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fast invocation of one method.
+ * <p>
+ * Methods taking up to one argument, two for static methods, are bound with
+ * {@link LambdaMetafactory} to a generated implementation of one of the {@code java.util.function}
+ * interfaces, which calls the method directly and the JIT inlines like any other call. Other
+ * methods, and methods the metafactory cannot bind, are invoked through reflection. On Java 9 or
+ * later, for classes in the same module as this library, the metafactory runs in a private lookup
+ * of the declaring class so non public methods are bound too; otherwise only public methods of
+ * public classes visible from this library are.
+ * <p>
+ * Like {@link Method#invoke(Object, Object...)} it wraps exceptions thrown by the method into an
+ * {@link InvocationTargetException}; unlike it, primitive arguments must be given as their own
+ * wrapper type, with no widening. Static methods ignore the target object.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class MethodAccessor
+{
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    /** MethodHandles.privateLookupIn; null before Java 9 */
+    private static final Method PRIVATE_LOOKUP_IN = privateLookupIn();
+
+    private final Method method;
+
+    /** The method parameter types with primitives replaced by their wrappers */
+    private final Class<?>[] parameterTypes;
+
+    /** Which parameters are primitive and so cannot take null */
+    private final boolean[] primitives;
+
+    private final boolean isStatic;
+
+    /** Calls the generated functional object or the method through reflection */
+    private final Invoker invoker;
+
+    /**
+     * Calls the method with checked arguments.
+     */
+    private interface Invoker
+    {
+        Object invoke(Object target, Object[] args) throws Throwable;
+    }
+
+    private MethodAccessor(final Method method) throws IllegalArgumentException
+    {
+        this.method = method;
+
+        try
+        {
+            method.setAccessible(true);
+        }
+        catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException(String.format("Cannot access method [%s]", method), e);
+        }
+
+        Class<?>[] types = method.getParameterTypes();
+        this.parameterTypes = new Class<?>[types.length];
+        this.primitives = new boolean[types.length];
+        for (int i = 0; i < types.length; i++)
+        {
+            primitives[i] = types[i].isPrimitive();
+            parameterTypes[i] = primitives[i] ? MethodType.methodType(types[i]).wrap().returnType() : types[i];
+        }
+
+        this.isStatic = Modifier.isStatic(method.getModifiers());
+        this.invoker = invoker(method, bind(method, isStatic));
+    }
+
+    /**
+     * Creates an accessor for the given method.
+     * 
+     * @param method
+     *            the method
+     * 
+     * @return the method accessor
+     * 
+     * @throws IllegalArgumentException
+     *             if the method is invalid or cannot be made accessible
+     */
+    public static MethodAccessor of(final Method method) throws IllegalArgumentException
+    {
+        if (method == null)
+            throw new IllegalArgumentException("Invalid method");
+
+        return new MethodAccessor(method);
+    }
+
+    /**
+     * Returns the invoked method.
+     * 
+     * @return the method
+     */
+    public Method method()
+    {
+        return method;
+    }
+
+    /**
+     * Invokes the method.
+     * 
+     * @param target
+     *            the object the method is invoked on; ignored for static methods
+     * @param args
+     *            the method arguments
+     * 
+     * @return the method result, boxed if primitive, or {@code null} for void methods
+     * 
+     * @throws IllegalArgumentException
+     *             if the target is not an instance of the method declaring class or the arguments
+     *             do not match the method parameters
+     * @throws InvocationTargetException
+     *             if the method throws an exception
+     */
+    public Object invoke(final Object target, final Object... args)
+            throws IllegalArgumentException, InvocationTargetException
+    {
+        Object[] arguments = args == null ? NO_ARGUMENTS : args;
+        check(target, arguments);
+
+        /* Arguments were checked, so anything thrown from here on comes from the method itself */
+        try
+        {
+            return invoker.invoke(target, arguments);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalArgumentException(String.format("Cannot access method [%s]", method), e);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return method.toString();
+    }
+
+    private void check(final Object target, final Object[] arguments) throws IllegalArgumentException
+    {
+        if (!isStatic && !method.getDeclaringClass().isInstance(target))
+            throw new IllegalArgumentException(String.format("Cannot invoke method [%s] on %s", method.getName(),
+                    target == null ? "null" : target.getClass().getName()));
+
+        if (arguments.length != parameterTypes.length)
+            throw new IllegalArgumentException(String.format("Method [%s] takes %d arguments; got %d",
+                    method.getName(), parameterTypes.length, arguments.length));
+
+        for (int i = 0; i < arguments.length; i++)
+        {
+            Object arg = arguments[i];
+            if (arg == null ? primitives[i] : !parameterTypes[i].isInstance(arg))
+                throw new IllegalArgumentException(
+                        String.format("Invalid argument %d for method [%s]", i, method.getName()));
+        }
+    }
+
+    /**
+     * Adapts the generated functional object, or reflection when there is none, to an invoker.
+     */
+    @SuppressWarnings("unchecked")
+    private static Invoker invoker(final Method method, final Object function)
+    {
+        if (function instanceof Runnable)
+        {
+            final Runnable f = (Runnable) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    f.run();
+                    return null;
+                }
+            };
+        }
+
+        if (function instanceof Supplier)
+        {
+            final Supplier<Object> f = (Supplier<Object>) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    return f.get();
+                }
+            };
+        }
+
+        final boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        if (function instanceof Consumer)
+        {
+            final Consumer<Object> f = (Consumer<Object>) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    f.accept(isStatic ? args[0] : target);
+                    return null;
+                }
+            };
+        }
+
+        if (function instanceof Function)
+        {
+            final Function<Object, Object> f = (Function<Object, Object>) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    return f.apply(isStatic ? args[0] : target);
+                }
+            };
+        }
+
+        if (function instanceof BiConsumer)
+        {
+            final BiConsumer<Object, Object> f = (BiConsumer<Object, Object>) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    if (isStatic)
+                        f.accept(args[0], args[1]);
+                    else
+                        f.accept(target, args[0]);
+                    return null;
+                }
+            };
+        }
+
+        if (function instanceof BiFunction)
+        {
+            final BiFunction<Object, Object, Object> f = (BiFunction<Object, Object, Object>) function;
+            return new Invoker()
+            {
+                @Override
+                public Object invoke(final Object target, final Object[] args)
+                {
+                    return isStatic ? f.apply(args[0], args[1]) : f.apply(target, args[0]);
+                }
+            };
+        }
+
+        return new Invoker()
+        {
+            @Override
+            public Object invoke(final Object target, final Object[] args)
+                    throws IllegalAccessException, InvocationTargetException
+            {
+                return method.invoke(target, args);
+            }
+        };
+    }
+
+    /**
+     * Binds the method to a generated functional object.
+     * 
+     * @return the functional object or null if the method cannot be bound
+     */
+    private static Object bind(final Method method, final boolean isStatic)
+    {
+        int arity = method.getParameterCount() + (isStatic ? 0 : 1);
+        if (arity > 2)
+            return null;
+
+        boolean isVoid = method.getReturnType() == void.class;
+
+        Class<?> functionType;
+        String name;
+        switch (arity)
+        {
+        case 0:
+            functionType = isVoid ? Runnable.class : Supplier.class;
+            name = isVoid ? "run" : "get";
+            break;
+        case 1:
+            functionType = isVoid ? Consumer.class : Function.class;
+            name = isVoid ? "accept" : "apply";
+            break;
+        default:
+            functionType = isVoid ? BiConsumer.class : BiFunction.class;
+            name = isVoid ? "accept" : "apply";
+            break;
+        }
+
+        /* A private lookup in the declaring class binds any method, but only from the same module */
+        if (PRIVATE_LOOKUP_IN != null)
+        {
+            try
+            {
+                MethodHandles.Lookup lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null,
+                        method.getDeclaringClass(), MethodHandles.lookup());
+                return metafactory(lookup, method, functionType, name, isVoid);
+            }
+            catch (Throwable e)
+            {
+                // falls through
+            }
+        }
+
+        /* Otherwise the generated class lives in this library and resolves names with its loader */
+        if (!Modifier.isPublic(method.getModifiers()) || !isVisible(method.getDeclaringClass())
+                || !isVisible(method.getReturnType()))
+            return null;
+        for (Class<?> parameterType : method.getParameterTypes())
+        {
+            if (!isVisible(parameterType))
+                return null;
+        }
+
+        try
+        {
+            return metafactory(MethodHandles.lookup(), method, functionType, name, isVoid);
+        }
+        catch (Throwable e)
+        {
+            return null; // invoked through reflection
+        }
+    }
+
+    private static Object metafactory(final MethodHandles.Lookup lookup, final Method method,
+            final Class<?> functionType, final String name, final boolean isVoid) throws Throwable
+    {
+        MethodHandle handle = lookup.unreflect(method);
+        MethodType instantiated = handle.type().wrap();
+        if (isVoid)
+            instantiated = instantiated.changeReturnType(void.class);
+
+        return LambdaMetafactory.metafactory(lookup, name, MethodType.methodType(functionType),
+                instantiated.erase(), handle, instantiated).getTarget().invoke();
+    }
+
+    private static boolean isVisible(final Class<?> type)
+    {
+        Class<?> t = type;
+        while (t.isArray())
+            t = t.getComponentType();
+        if (t.isPrimitive())
+            return true;
+
+        for (Class<?> c = t; c != null; c = c.getEnclosingClass())
+        {
+            if (!Modifier.isPublic(c.getModifiers()))
+                return false;
+        }
+
+        try
+        {
+            return Class.forName(t.getName(), false, MethodAccessor.class.getClassLoader()) == t;
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    private static Method privateLookupIn()
+    {
+        try
+        {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null; // Java 8
+        }
+    }
+}
\ No newline at end of file
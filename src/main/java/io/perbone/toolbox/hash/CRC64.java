@@ -19,6 +19,8 @@
 
 package io.perbone.toolbox.hash;
 
+import java.nio.ByteBuffer;
+
 /**
  * CRC64 checksum calculator based on the polynom specified in ISO 3309. The implementation is based
  * on the following publication:
@@ -66,12 +68,75 @@ public final class CRC64
      */
     public static long checksum(final byte[] data)
     {
-        long sum = 0;
-        for (int i = 0; i < data.length; i++)
+        return update(0, data, 0, data.length);
+    }
+
+    /**
+     * Calculates the CRC64 checksum for the remaining bytes of the given buffer.
+     * <p>
+     * The buffer position is left untouched.
+     * 
+     * @param data
+     *            data to calculate checksum for
+     * 
+     * @return checksum value
+     * 
+     * @since 0.6.0
+     */
+    public static long checksum(final ByteBuffer data)
+    {
+        return update(0, data);
+    }
+
+    /**
+     * Updates the given CRC64 checksum with a range of the given data array.
+     * <p>
+     * Checksums can be calculated incrementally starting from zero.
+     * 
+     * @param sum
+     *            the current checksum value
+     * @param data
+     *            data to update the checksum with
+     * @param offset
+     *            the start offset in the data array
+     * @param length
+     *            the number of bytes to use
+     * 
+     * @return the updated checksum value
+     * 
+     * @since 0.6.0
+     */
+    public static long update(long sum, final byte[] data, final int offset, final int length)
+    {
+        for (int i = offset; i < offset + length; i++)
         {
             final int lookupidx = ((int) sum ^ data[i]) & 0xff;
             sum = (sum >>> 8) ^ LOOKUPTABLE[lookupidx];
         }
         return sum;
     }
+
+    /**
+     * Updates the given CRC64 checksum with the remaining bytes of the given buffer.
+     * <p>
+     * The buffer position is left untouched.
+     * 
+     * @param sum
+     *            the current checksum value
+     * @param data
+     *            data to update the checksum with
+     * 
+     * @return the updated checksum value
+     * 
+     * @since 0.6.0
+     */
+    public static long update(long sum, final ByteBuffer data)
+    {
+        for (int i = data.position(); i < data.limit(); i++)
+        {
+            final int lookupidx = ((int) sum ^ data.get(i)) & 0xff;
+            sum = (sum >>> 8) ^ LOOKUPTABLE[lookupidx];
+        }
+        return sum;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counter going up and down.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class Counter
+{
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void inc()
+    {
+        count.increment();
+    }
+
+    /**
+     * Adds the given amount to the counter.
+     * 
+     * @param n
+     *            the amount; may be negative
+     */
+    public void inc(final long n)
+    {
+        count.add(n);
+    }
+
+    /**
+     * Subtracts one from the counter.
+     */
+    public void dec()
+    {
+        count.decrement();
+    }
+
+    /**
+     * Returns the counter value.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+}
\ No newline at end of file
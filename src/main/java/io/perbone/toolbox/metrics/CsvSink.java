@@ -0,0 +1,112 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Appends metric reports to CSV files, one file per metric named after it.
+ * <p>
+ * A file gets a header line when created. Every row starts with the report time in seconds since
+ * the epoch; rates are events per second and durations nanoseconds. Timer rows describe the
+ * reported interval, except the first count column which is cumulative.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class CsvSink implements MetricSink
+{
+    private static final String COUNTER_HEADER = "t,count";
+
+    private static final String METER_HEADER = "t,count,mean_rate,m1_rate,m5_rate,m15_rate";
+
+    private static final String TIMER_HEADER = "t,count,interval_count,min,p50,p75,p95,p99,p999,max,mean";
+
+    private final Path directory;
+
+    /**
+     * Creates a sink writing to the given directory.
+     * 
+     * @param directory
+     *            the directory; created if needed
+     * 
+     * @throws IllegalArgumentException
+     *             if the directory is invalid
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    public CsvSink(final Path directory) throws IllegalArgumentException, IOException
+    {
+        if (directory == null)
+            throw new IllegalArgumentException("Invalid directory");
+
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public void write(final MetricReport report) throws IOException
+    {
+        long t = report.getTimestamp() / 1000;
+
+        for (Map.Entry<String, Long> entry : report.getCounters().entrySet())
+            append(entry.getKey(), COUNTER_HEADER, t + "," + entry.getValue());
+
+        for (Map.Entry<String, Meter> entry : report.getMeters().entrySet())
+        {
+            Meter m = entry.getValue();
+            append(entry.getKey(), METER_HEADER, String.format(Locale.ROOT, "%d,%d,%f,%f,%f,%f", t, m.getCount(),
+                    m.getMeanRate(), m.getOneMinuteRate(), m.getFiveMinuteRate(), m.getFifteenMinuteRate()));
+        }
+
+        for (Map.Entry<String, Histogram.Snapshot> entry : report.getIntervals().entrySet())
+        {
+            Histogram.Snapshot s = entry.getValue();
+            append(entry.getKey(), TIMER_HEADER,
+                    String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%f", t,
+                            report.getTimers().get(entry.getKey()).getCount(), s.getCount(), s.getMin(),
+                            s.getValueAtPercentile(50), s.getValueAtPercentile(75), s.getValueAtPercentile(95),
+                            s.getValueAtPercentile(99), s.getValueAtPercentile(99.9), s.getMax(), s.getMean()));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "csv:" + directory;
+    }
+
+    private void append(final String name, final String header, final String row) throws IOException
+    {
+        Path file = directory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".csv");
+
+        String text = row + '\n';
+        if (!Files.exists(file))
+            text = header + '\n' + text;
+
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,480 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent high dynamic range histogram of non-negative values, typically nanosecond
+ * latencies.
+ * <p>
+ * Values are counted in buckets whose width grows with the magnitude of the value, keeping a
+ * fixed number of significant decimal digits over the whole range: with two digits any value is
+ * reported within 1% of its true value, whether it is a microsecond or an hour. The layout
+ * follows the HdrHistogram one; each power of two range is split into the same number of linear
+ * sub-buckets, so finding the bucket of a value takes a few shifts and no search.
+ * <p>
+ * Memory is allocated once, in proportion to the tracked range and precision. Recording is
+ * allocation-free and lock-free, one atomic increment in the common case, so any number of
+ * threads can record into the same histogram. Values above the highest trackable value are
+ * counted as that value.
+ * <p>
+ * Statistics are read from {@link Snapshot snapshots}, either cumulative or covering the interval
+ * since the previous interval snapshot. A snapshot taken while other threads record may miss some
+ * of the values recorded meanwhile; they show up in the next one.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class Histogram
+{
+    /** Default highest trackable value; one hour in nanoseconds */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    /** Default number of significant decimal digits */
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+
+    private final int significantDigits;
+
+    /** Log2 of half the number of sub-buckets per bucket */
+    private final int subBucketHalfCountMagnitude;
+
+    private final int subBucketHalfCount;
+
+    private final long subBucketMask;
+
+    private final AtomicLongArray counts;
+
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    private final AtomicLong max = new AtomicLong(0);
+
+    /** Counts as of the last interval snapshot */
+    private long[] intervalCounts;
+
+    /**
+     * Creates a histogram tracking values up to one hour in nanoseconds with two significant
+     * digits.
+     */
+    public Histogram()
+    {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Creates a histogram with the given range and precision.
+     * 
+     * @param highestTrackableValue
+     *            the highest value to tell apart from bigger ones; at least 2
+     * @param significantDigits
+     *            the number of significant decimal digits kept, from 1 to 5
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is out of range
+     */
+    public Histogram(final long highestTrackableValue, final int significantDigits) throws IllegalArgumentException
+    {
+        if (highestTrackableValue < 2)
+            throw new IllegalArgumentException("Invalid highest trackable value");
+        if (significantDigits < 1 || significantDigits > 5)
+            throw new IllegalArgumentException("Invalid number of significant digits");
+
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        long largestSingleUnitValue = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitValue - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+        this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+
+        this.counts = new AtomicLongArray(countsIndex(highestTrackableValue) + 1);
+        this.intervalCounts = new long[counts.length()];
+    }
+
+    /**
+     * Returns the highest value told apart from bigger ones.
+     * 
+     * @return the highest trackable value
+     */
+    public long getHighestTrackableValue()
+    {
+        return highestTrackableValue;
+    }
+
+    /**
+     * Returns the number of significant decimal digits kept.
+     * 
+     * @return the number of digits
+     */
+    public int getSignificantDigits()
+    {
+        return significantDigits;
+    }
+
+    /**
+     * Records a value.
+     * 
+     * @param value
+     *            the value; values above the highest trackable value are recorded as that value
+     * 
+     * @throws IllegalArgumentException
+     *             if the value is negative
+     */
+    public void record(final long value) throws IllegalArgumentException
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Invalid value; cannot be negative");
+
+        long v = Math.min(value, highestTrackableValue);
+        counts.incrementAndGet(countsIndex(v));
+
+        if (v < min.get())
+            updateMin(v);
+        if (v > max.get())
+            updateMax(v);
+    }
+
+    /**
+     * Records a duration in nanoseconds.
+     * 
+     * @param duration
+     *            the duration
+     * @param unit
+     *            the time unit of the duration
+     * 
+     * @throws IllegalArgumentException
+     *             if the duration is negative or the unit is invalid
+     */
+    public void record(final long duration, final TimeUnit unit) throws IllegalArgumentException
+    {
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        record(unit.toNanos(duration));
+    }
+
+    /**
+     * Adds all the values recorded by another histogram to this one.
+     * <p>
+     * Typical use is merging histograms recorded by different threads or processes. Both must
+     * have the same range and precision.
+     * 
+     * @param other
+     *            the histogram to add
+     * 
+     * @throws IllegalArgumentException
+     *             if the other histogram is invalid or has a different layout
+     */
+    public void add(final Histogram other) throws IllegalArgumentException
+    {
+        if (other == null)
+            throw new IllegalArgumentException("Invalid histogram");
+        if (other.highestTrackableValue != highestTrackableValue || other.significantDigits != significantDigits)
+            throw new IllegalArgumentException("Cannot add a histogram with a different range or precision");
+
+        for (int i = 0; i < counts.length(); i++)
+        {
+            long count = other.counts.get(i);
+            if (count != 0)
+                counts.addAndGet(i, count);
+        }
+
+        long otherMin = other.min.get();
+        if (otherMin < min.get())
+            updateMin(otherMin);
+        long otherMax = other.max.get();
+        if (otherMax > max.get())
+            updateMax(otherMax);
+    }
+
+    /**
+     * Returns the number of values recorded since creation or the last reset.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++)
+            total += counts.get(i);
+
+        return total;
+    }
+
+    /**
+     * Returns the statistics of all the values recorded since creation or the last reset.
+     * 
+     * @return the snapshot
+     */
+    public Snapshot snapshot()
+    {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++)
+            copy[i] = counts.get(i);
+
+        return new Snapshot(this, copy, min.get(), max.get());
+    }
+
+    /**
+     * Returns the statistics of the values recorded since the previous call, or since creation
+     * or the last reset for the first one.
+     * <p>
+     * The minimum and maximum of an interval are only known within the histogram precision.
+     * 
+     * @return the snapshot
+     */
+    public synchronized Snapshot intervalSnapshot()
+    {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++)
+        {
+            long count = counts.get(i);
+            copy[i] = count - intervalCounts[i];
+            intervalCounts[i] = count;
+        }
+
+        return new Snapshot(this, copy, -1, -1);
+    }
+
+    /**
+     * Forgets all the values recorded so far.
+     * <p>
+     * Values recorded while resetting may or may not be kept.
+     */
+    public synchronized void reset()
+    {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        intervalCounts = new long[counts.length()];
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    private void updateMin(final long value)
+    {
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value))
+            ; // lost a race; retry
+    }
+
+    private void updateMax(final long value)
+    {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+            ; // lost a race; retry
+    }
+
+    private int countsIndex(final long value)
+    {
+        int bucketIndex = 63 - Long.numberOfLeadingZeros(value | subBucketMask) - subBucketHalfCountMagnitude;
+        int subBucketIndex = (int) (value >>> bucketIndex);
+
+        return (bucketIndex << subBucketHalfCountMagnitude) + subBucketIndex;
+    }
+
+    private long lowestEquivalentValue(final int index)
+    {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0)
+        {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+
+        return (long) subBucketIndex << bucketIndex;
+    }
+
+    private long highestEquivalentValue(final int index)
+    {
+        int bucketIndex = Math.max((index >> subBucketHalfCountMagnitude) - 1, 0);
+
+        return lowestEquivalentValue(index) + (1L << bucketIndex) - 1;
+    }
+
+    /**
+     * Immutable statistics of the values recorded by a {@link Histogram}.
+     */
+    public static final class Snapshot
+    {
+        private final Histogram histogram;
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long min;
+
+        private final long max;
+
+        private final double mean;
+
+        private Snapshot(final Histogram histogram, final long[] counts, final long min, final long max)
+        {
+            this.histogram = histogram;
+            this.counts = counts;
+
+            long total = 0;
+            double sum = 0;
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < counts.length; i++)
+            {
+                if (counts[i] == 0)
+                    continue;
+
+                total += counts[i];
+                sum += counts[i] * (double) median(i);
+                if (first < 0)
+                    first = i;
+                last = i;
+            }
+
+            this.count = total;
+            if (total == 0)
+            {
+                this.min = 0;
+                this.max = 0;
+                this.mean = 0;
+            }
+            else
+            {
+                this.min = min >= 0 ? min : histogram.lowestEquivalentValue(first);
+                this.max = max >= 0 ? max : histogram.highestEquivalentValue(last);
+                this.mean = sum / total;
+            }
+        }
+
+        /**
+         * Returns the number of values.
+         * 
+         * @return the count
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the smallest value.
+         * 
+         * @return the minimum or zero if there are no values
+         */
+        public long getMin()
+        {
+            return min;
+        }
+
+        /**
+         * Returns the biggest value.
+         * 
+         * @return the maximum or zero if there are no values
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Returns the mean of the values, within the histogram precision.
+         * 
+         * @return the mean or zero if there are no values
+         */
+        public double getMean()
+        {
+            return mean;
+        }
+
+        /**
+         * Returns the value at the given percentile.
+         * <p>
+         * That is the smallest recorded value, within the histogram precision, not exceeded by the
+         * given percentage of the values.
+         * 
+         * @param percentile
+         *            the percentile, from 0 to 100
+         * 
+         * @return the value or zero if there are no values
+         * 
+         * @throws IllegalArgumentException
+         *             if the percentile is out of range
+         */
+        public long getValueAtPercentile(final double percentile) throws IllegalArgumentException
+        {
+            if (!(percentile >= 0 && percentile <= 100))
+                throw new IllegalArgumentException("Invalid percentile");
+
+            if (count == 0)
+                return 0;
+
+            long target = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= target)
+                    return Math.max(Math.min(histogram.highestEquivalentValue(i), max), min);
+            }
+
+            return max;
+        }
+
+        /**
+         * Returns the value at the given percentile.
+         * 
+         * @param percentile
+         *            the percentile, from 0 to 100
+         * @param unit
+         *            the time unit of the result, the values being nanoseconds
+         * 
+         * @return the value or zero if there are no values
+         * 
+         * @throws IllegalArgumentException
+         *             if the percentile is out of range or the unit is invalid
+         */
+        public long getValueAtPercentile(final double percentile, final TimeUnit unit)
+                throws IllegalArgumentException
+        {
+            if (unit == null)
+                throw new IllegalArgumentException("TimeUnit cannot be null");
+
+            return unit.convert(getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count=%d min=%d p50=%d p90=%d p99=%d p999=%d max=%d mean=%.1f", count, min,
+                    getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                    getValueAtPercentile(99.9), max, mean);
+        }
+
+        private long median(final int index)
+        {
+            long lowest = histogram.lowestEquivalentValue(index);
+            return lowest + (histogram.highestEquivalentValue(index) - lowest + 1) / 2;
+        }
+    }
+}
\ No newline at end of file
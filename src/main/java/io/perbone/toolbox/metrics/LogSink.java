@@ -0,0 +1,106 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes metric reports to a SLF4J logger at info level, one line per metric.
+ * <p>
+ * Rates are events per second; durations are milliseconds with microsecond precision.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class LogSink implements MetricSink
+{
+    private final Logger logger;
+
+    /**
+     * Creates a sink writing to the logger of this package.
+     */
+    public LogSink()
+    {
+        this(LoggerFactory.getLogger(MetricReporter.class.getPackage().getName()));
+    }
+
+    /**
+     * Creates a sink writing to the given logger.
+     * 
+     * @param logger
+     *            the logger
+     * 
+     * @throws IllegalArgumentException
+     *             if the logger is invalid
+     */
+    public LogSink(final Logger logger) throws IllegalArgumentException
+    {
+        if (logger == null)
+            throw new IllegalArgumentException("Invalid logger");
+
+        this.logger = logger;
+    }
+
+    @Override
+    public void write(final MetricReport report)
+    {
+        if (!logger.isInfoEnabled())
+            return;
+
+        for (Map.Entry<String, Long> entry : report.getCounters().entrySet())
+            logger.info("counter {} count={}", entry.getKey(), entry.getValue());
+
+        for (Map.Entry<String, Meter> entry : report.getMeters().entrySet())
+        {
+            Meter m = entry.getValue();
+            logger.info(String.format(Locale.ROOT, "meter %s count=%d mean=%.2f m1=%.2f m5=%.2f m15=%.2f",
+                    entry.getKey(), m.getCount(), m.getMeanRate(), m.getOneMinuteRate(), m.getFiveMinuteRate(),
+                    m.getFifteenMinuteRate()));
+        }
+
+        for (Map.Entry<String, Timer> entry : report.getTimers().entrySet())
+        {
+            Histogram.Snapshot s = report.getIntervals().get(entry.getKey());
+            if (s == null)
+                logger.info("timer {} count={}", entry.getKey(), entry.getValue().getCount());
+            else
+                logger.info(String.format(Locale.ROOT, "timer %s count=%d interval=%d min=%.3f p50=%.3f p90=%.3f"
+                        + " p99=%.3f p999=%.3f max=%.3f mean=%.3f", entry.getKey(), entry.getValue().getCount(),
+                        s.getCount(), millis(s.getMin()), millis(s.getValueAtPercentile(50)),
+                        millis(s.getValueAtPercentile(90)), millis(s.getValueAtPercentile(99)),
+                        millis(s.getValueAtPercentile(99.9)), millis(s.getMax()), s.getMean() / 1e6));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "log:" + logger.getName();
+    }
+
+    private static double millis(final long nanos)
+    {
+        return nanos / 1e6;
+    }
+}
\ No newline at end of file
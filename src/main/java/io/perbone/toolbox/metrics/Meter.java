@@ -0,0 +1,209 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.perbone.toolbox.time.MonotonicClock;
+
+/**
+ * Lock-free event rate meter with exponentially weighted moving averages.
+ * <p>
+ * Besides the mean rate since creation it keeps the one, five and fifteen minute moving
+ * averages the Unix load average uses, updated every five seconds. There is no background
+ * thread: the first call after a five second boundary, marking or reading, catches the averages
+ * up. All rates are events per second.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class Meter
+{
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * One moving average; only the thread that won the tick updates it.
+     */
+    private static final class Average
+    {
+        private final double alpha;
+
+        private volatile double rate;
+
+        private volatile boolean initialized;
+
+        private Average(final long minutes)
+        {
+            this.alpha = 1 - Math.exp(-TICK_INTERVAL / (double) TimeUnit.MINUTES.toNanos(minutes));
+        }
+
+        private void update(final double instantRate)
+        {
+            if (initialized)
+                rate += alpha * (instantRate - rate);
+            else
+            {
+                rate = instantRate;
+                initialized = true;
+            }
+        }
+    }
+
+    private final MonotonicClock clock;
+
+    private final long startTime;
+
+    private final AtomicLong lastTick;
+
+    private final LongAdder count = new LongAdder();
+
+    /** Events marked since the last tick */
+    private final LongAdder uncounted = new LongAdder();
+
+    private final Average m1 = new Average(1);
+
+    private final Average m5 = new Average(5);
+
+    private final Average m15 = new Average(15);
+
+    /**
+     * Creates a meter reading the system monotonic clock.
+     */
+    public Meter()
+    {
+        this(MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a meter reading the given clock.
+     * 
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if the clock is invalid
+     */
+    public Meter(final MonotonicClock clock) throws IllegalArgumentException
+    {
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.lastTick = new AtomicLong(startTime);
+    }
+
+    /**
+     * Marks the occurrence of an event.
+     */
+    public void mark()
+    {
+        mark(1);
+    }
+
+    /**
+     * Marks the occurrence of the given number of events.
+     * 
+     * @param n
+     *            the number of events
+     */
+    public void mark(final long n)
+    {
+        tickIfNecessary();
+        count.add(n);
+        uncounted.add(n);
+    }
+
+    /**
+     * Returns the number of events marked.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean rate since the meter was created.
+     * 
+     * @return the rate in events per second
+     */
+    public double getMeanRate()
+    {
+        long elapsed = clock.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : getCount() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Returns the one minute moving average rate.
+     * 
+     * @return the rate in events per second
+     */
+    public double getOneMinuteRate()
+    {
+        tickIfNecessary();
+        return m1.rate;
+    }
+
+    /**
+     * Returns the five minute moving average rate.
+     * 
+     * @return the rate in events per second
+     */
+    public double getFiveMinuteRate()
+    {
+        tickIfNecessary();
+        return m5.rate;
+    }
+
+    /**
+     * Returns the fifteen minute moving average rate.
+     * 
+     * @return the rate in events per second
+     */
+    public double getFifteenMinuteRate()
+    {
+        tickIfNecessary();
+        return m15.rate;
+    }
+
+    private void tickIfNecessary()
+    {
+        long old = lastTick.get();
+        long age = clock.nanoTime() - old;
+        if (age < TICK_INTERVAL)
+            return;
+
+        long ticks = age / TICK_INTERVAL;
+        if (!lastTick.compareAndSet(old, old + ticks * TICK_INTERVAL))
+            return; // another thread is ticking
+
+        for (long i = 0; i < ticks; i++)
+        {
+            double instantRate = uncounted.sumThenReset() / (TICK_INTERVAL / (double) TimeUnit.SECONDS.toNanos(1));
+            m1.update(instantRate);
+            m5.update(instantRate);
+            m15.update(instantRate);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.perbone.toolbox.time.MonotonicClock;
+
+/**
+ * Registry of named counters, meters and timers.
+ * <p>
+ * Metrics are created on first use and shared afterwards, so code only needs the registry and a
+ * name; looking one up is a concurrent map read, updating it never locks. A name identifies a
+ * single metric of a single kind.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class MetricRegistry
+{
+    private final Map<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+    private final MonotonicClock clock;
+
+    /**
+     * Creates a registry whose meters and timers read the system monotonic clock.
+     */
+    public MetricRegistry()
+    {
+        this(MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a registry whose meters and timers read the given clock.
+     * 
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if the clock is invalid
+     */
+    public MetricRegistry(final MonotonicClock clock) throws IllegalArgumentException
+    {
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if needed.
+     * 
+     * @param name
+     *            the metric name
+     * 
+     * @return the counter
+     * 
+     * @throws IllegalArgumentException
+     *             if the name is invalid or names another kind of metric
+     */
+    public Counter counter(final String name) throws IllegalArgumentException
+    {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * Returns the meter with the given name, creating it if needed.
+     * 
+     * @param name
+     *            the metric name
+     * 
+     * @return the meter
+     * 
+     * @throws IllegalArgumentException
+     *             if the name is invalid or names another kind of metric
+     */
+    public Meter meter(final String name) throws IllegalArgumentException
+    {
+        return get(name, Meter.class);
+    }
+
+    /**
+     * Returns the timer with the given name, creating it with a default {@link Histogram} if
+     * needed.
+     * 
+     * @param name
+     *            the metric name
+     * 
+     * @return the timer
+     * 
+     * @throws IllegalArgumentException
+     *             if the name is invalid or names another kind of metric
+     */
+    public Timer timer(final String name) throws IllegalArgumentException
+    {
+        return get(name, Timer.class);
+    }
+
+    /**
+     * Removes the metric with the given name.
+     * 
+     * @param name
+     *            the metric name
+     * 
+     * @return {@code true} if there was such metric; {@code false} otherwise
+     */
+    public boolean remove(final String name)
+    {
+        return name != null && metrics.remove(name) != null;
+    }
+
+    /**
+     * Takes a report of every metric.
+     * <p>
+     * Timer statistics cover the interval since the previous report; this consumes the timer
+     * {@link Histogram#intervalSnapshot() interval snapshots}, so a registry should have a single
+     * reporter.
+     * 
+     * @return the report
+     */
+    public MetricReport report()
+    {
+        SortedMap<String, Long> counters = new TreeMap<String, Long>();
+        SortedMap<String, Meter> meters = new TreeMap<String, Meter>();
+        SortedMap<String, Timer> timers = new TreeMap<String, Timer>();
+        SortedMap<String, Histogram.Snapshot> intervals = new TreeMap<String, Histogram.Snapshot>();
+
+        for (Map.Entry<String, Object> entry : metrics.entrySet())
+        {
+            Object metric = entry.getValue();
+            if (metric instanceof Counter)
+                counters.put(entry.getKey(), ((Counter) metric).getCount());
+            else if (metric instanceof Meter)
+                meters.put(entry.getKey(), (Meter) metric);
+            else if (metric instanceof Timer)
+            {
+                Timer timer = (Timer) metric;
+                timers.put(entry.getKey(), timer);
+                if (timer.getHistogram() != null)
+                    intervals.put(entry.getKey(), timer.getHistogram().intervalSnapshot());
+            }
+        }
+
+        return new MetricReport(System.currentTimeMillis(), Collections.unmodifiableSortedMap(counters),
+                Collections.unmodifiableSortedMap(meters), Collections.unmodifiableSortedMap(timers),
+                Collections.unmodifiableSortedMap(intervals));
+    }
+
+    private <T> T get(final String name, final Class<T> type) throws IllegalArgumentException
+    {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Invalid metric name");
+
+        Object metric = metrics.get(name);
+        if (metric == null)
+        {
+            Object created = create(type);
+            metric = metrics.putIfAbsent(name, created);
+            if (metric == null)
+                metric = created;
+        }
+
+        if (!type.isInstance(metric))
+            throw new IllegalArgumentException(
+                    String.format("Metric [%s] is not a %s", name, type.getSimpleName().toLowerCase()));
+
+        return type.cast(metric);
+    }
+
+    private Object create(final Class<?> type)
+    {
+        if (type == Counter.class)
+            return new Counter();
+        else if (type == Meter.class)
+            return new Meter(clock);
+        else
+            return new Timer(new Histogram(), clock);
+    }
+}
\ No newline at end of file
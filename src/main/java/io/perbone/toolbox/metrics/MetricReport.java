@@ -0,0 +1,105 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.SortedMap;
+
+/**
+ * The state of the metrics of a {@link MetricRegistry} at a given time, sorted by name.
+ * <p>
+ * Counter values are copied. Meters and timers are the live objects, giving cumulative counts and
+ * current rates; the timer statistics of the reported interval are in {@link #getIntervals()}.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class MetricReport
+{
+    private final long timestamp;
+
+    private final SortedMap<String, Long> counters;
+
+    private final SortedMap<String, Meter> meters;
+
+    private final SortedMap<String, Timer> timers;
+
+    private final SortedMap<String, Histogram.Snapshot> intervals;
+
+    MetricReport(final long timestamp, final SortedMap<String, Long> counters, final SortedMap<String, Meter> meters,
+            final SortedMap<String, Timer> timers, final SortedMap<String, Histogram.Snapshot> intervals)
+    {
+        this.timestamp = timestamp;
+        this.counters = counters;
+        this.meters = meters;
+        this.timers = timers;
+        this.intervals = intervals;
+    }
+
+    /**
+     * Returns the wall clock time the report was taken.
+     * 
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Returns the counter values by name.
+     * 
+     * @return an immutable map
+     */
+    public SortedMap<String, Long> getCounters()
+    {
+        return counters;
+    }
+
+    /**
+     * Returns the meters by name.
+     * 
+     * @return an immutable map
+     */
+    public SortedMap<String, Meter> getMeters()
+    {
+        return meters;
+    }
+
+    /**
+     * Returns the timers by name.
+     * 
+     * @return an immutable map
+     */
+    public SortedMap<String, Timer> getTimers()
+    {
+        return timers;
+    }
+
+    /**
+     * Returns the statistics of the durations recorded by each timer during the reported
+     * interval, in nanoseconds; timers without histogram are left out.
+     * 
+     * @return an immutable map
+     */
+    public SortedMap<String, Histogram.Snapshot> getIntervals()
+    {
+        return intervals;
+    }
+}
\ No newline at end of file
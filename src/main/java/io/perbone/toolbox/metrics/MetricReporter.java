@@ -0,0 +1,160 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.perbone.toolbox.time.TimerScheduler;
+
+/**
+ * Periodically takes a report of a {@link MetricRegistry} and writes it to one or more sinks.
+ * <p>
+ * Reports run on a {@link TimerScheduler} with a fixed delay, so a slow sink delays the next
+ * report instead of piling them up. A failing sink is logged and does not stop the others.
+ * Closing the reporter writes a last report, so the final interval is not lost.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class MetricReporter implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetricReporter.class);
+
+    private final MetricRegistry registry;
+
+    private final List<MetricSink> sinks;
+
+    /** Serializes reports, so interval snapshots are never split and sinks never run concurrently */
+    private final Object reportLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a reporter of the given registry.
+     * 
+     * @param registry
+     *            the registry
+     * @param sinks
+     *            the sinks to write the reports to
+     * 
+     * @throws IllegalArgumentException
+     *             if the registry or any sink is invalid
+     */
+    public MetricReporter(final MetricRegistry registry, final MetricSink... sinks) throws IllegalArgumentException
+    {
+        if (registry == null)
+            throw new IllegalArgumentException("Invalid registry");
+        if (sinks == null || sinks.length == 0 || Arrays.asList(sinks).contains(null))
+            throw new IllegalArgumentException("Invalid sinks");
+
+        this.registry = registry;
+        this.sinks = new ArrayList<MetricSink>(Arrays.asList(sinks));
+    }
+
+    /**
+     * Starts reporting periodically.
+     * 
+     * @param period
+     *            the time between reports
+     * @param unit
+     *            the time unit of the period
+     * 
+     * @throws IllegalArgumentException
+     *             if the period is not positive or the unit is invalid
+     * @throws IllegalStateException
+     *             if the reporter was already started
+     */
+    public synchronized void start(final long period, final TimeUnit unit)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period");
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        if (scheduler != null)
+            throw new IllegalStateException("Reporter already started");
+
+        scheduler = new TimerScheduler();
+        scheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                report();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Takes a report and writes it to every sink right now.
+     * <p>
+     * Reports are serialized; a call made while a scheduled report is being written waits for it.
+     */
+    public void report()
+    {
+        synchronized (reportLock)
+        {
+            MetricReport report = registry.report();
+
+            for (MetricSink sink : sinks)
+            {
+                try
+                {
+                    sink.write(report);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    logger.warn("Could not write metrics to [{}]", sink, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops reporting, waits for a scheduled report in progress and writes a last report.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler == null)
+            return;
+
+        scheduler.shutdown();
+        try
+        {
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt(); // reports are serialized anyway
+        }
+        scheduler = null;
+
+        report();
+    }
+}
\ No newline at end of file
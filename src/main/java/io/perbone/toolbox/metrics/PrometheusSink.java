@@ -0,0 +1,190 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the last metric report in the Prometheus text exposition format.
+ * <p>
+ * The JDK built-in HTTP server answers scrapes on {@code /metrics}. Counters become gauges, since
+ * they may go down, meters a {@code _total} counter plus {@code _rate} gauges by window,
+ * and timers summaries in seconds whose quantiles describe the last reported interval. Names are
+ * sanitized to the characters Prometheus allows.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class PrometheusSink implements MetricSink, AutoCloseable
+{
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.99, 0.999 };
+
+    private final HttpServer server;
+
+    private volatile byte[] page = new byte[0];
+
+    /**
+     * Creates a sink serving on the given address.
+     * 
+     * @param address
+     *            the address to bind; port zero picks a free port
+     * 
+     * @throws IllegalArgumentException
+     *             if the address is invalid
+     * @throws IOException
+     *             if the server cannot be started
+     */
+    public PrometheusSink(final InetSocketAddress address) throws IllegalArgumentException, IOException
+    {
+        if (address == null)
+            throw new IllegalArgumentException("Invalid address");
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Returns the address the server is bound to.
+     * 
+     * @return the address
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    @Override
+    public void write(final MetricReport report)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, Long> entry : report.getCounters().entrySet())
+        {
+            String name = sanitize(entry.getKey());
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        for (Map.Entry<String, Meter> entry : report.getMeters().entrySet())
+        {
+            String name = sanitize(entry.getKey());
+            Meter m = entry.getValue();
+            sb.append("# TYPE ").append(name).append("_total counter\n");
+            sb.append(name).append("_total ").append(m.getCount()).append('\n');
+            sb.append("# TYPE ").append(name).append("_rate gauge\n");
+            gauge(sb, name, "1m", m.getOneMinuteRate());
+            gauge(sb, name, "5m", m.getFiveMinuteRate());
+            gauge(sb, name, "15m", m.getFifteenMinuteRate());
+        }
+
+        for (Map.Entry<String, Timer> entry : report.getTimers().entrySet())
+        {
+            String name = sanitize(entry.getKey()) + "_seconds";
+            Timer timer = entry.getValue();
+            sb.append("# TYPE ").append(name).append(" summary\n");
+
+            Histogram.Snapshot s = report.getIntervals().get(entry.getKey());
+            if (s != null)
+            {
+                for (double q : QUANTILES)
+                    sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                            .append(seconds(s.getValueAtPercentile(q * 100))).append('\n');
+            }
+
+            sb.append(name).append("_sum ").append(seconds(timer.getTotalTime(TimeUnit.NANOSECONDS))).append('\n');
+            sb.append(name).append("_count ").append(timer.getCount()).append('\n');
+        }
+
+        page = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @Override
+    public void close()
+    {
+        server.stop(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "prometheus:" + getAddress();
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            byte[] body = page;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            if (body.length > 0)
+            {
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(body);
+                }
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static void gauge(final StringBuilder sb, final String name, final String window, final double rate)
+    {
+        sb.append(name).append("_rate{window=\"").append(window).append("\"} ")
+                .append(String.format(Locale.ROOT, "%f", rate)).append('\n');
+    }
+
+    private static String seconds(final long nanos)
+    {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String sanitize(final String name)
+    {
+        String s = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(s.charAt(0)) ? "_" + s : s;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.perbone.toolbox.time.MonotonicClock;
+
+/**
+ * Lock-free counter of the events within a sliding time window.
+ * <p>
+ * The window is split into a ring of equal time buckets, each counting in its own striped
+ * accumulator, so concurrent updates rarely contend. There is no background thread: a bucket is
+ * cleared by the first update landing in it after the ring has come around, and reads skip the
+ * buckets that have fallen out of the window. Memory is fixed by the bucket count however many
+ * events are counted.
+ * <p>
+ * The window slides by whole buckets. The count covers the current bucket, partly elapsed, and
+ * the ones before it, that is between the window less one bucket and the whole window; more
+ * buckets make it smoother. Typical uses are error rates, comparing two counters over the same
+ * window, and throughput over the last seconds.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class SlidingCounter
+{
+    /**
+     * One bucket of the ring and the bucket number it is counting for.
+     */
+    private static final class Bucket
+    {
+        private final LongAdder count = new LongAdder();
+
+        private volatile long number = Long.MIN_VALUE;
+    }
+
+    private final MonotonicClock clock;
+
+    private final long origin;
+
+    private final long width;
+
+    private final Bucket[] buckets;
+
+    /**
+     * Creates a counter reading the system monotonic clock.
+     * 
+     * @param window
+     *            the window length
+     * @param unit
+     *            the time unit of the window
+     * @param buckets
+     *            the number of buckets splitting the window
+     * 
+     * @throws IllegalArgumentException
+     *             if the window is shorter than the bucket count in nanoseconds, the bucket count
+     *             is not positive or the unit is invalid
+     */
+    public SlidingCounter(final long window, final TimeUnit unit, final int buckets) throws IllegalArgumentException
+    {
+        this(window, unit, buckets, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a counter reading the given clock.
+     * 
+     * @param window
+     *            the window length
+     * @param unit
+     *            the time unit of the window
+     * @param buckets
+     *            the number of buckets splitting the window
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if the window is shorter than the bucket count in nanoseconds, the bucket count
+     *             is not positive or either the unit or the clock is invalid
+     */
+    public SlidingCounter(final long window, final TimeUnit unit, final int buckets, final MonotonicClock clock)
+            throws IllegalArgumentException
+    {
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        if (buckets <= 0)
+            throw new IllegalArgumentException("Invalid bucket count; must be positive");
+        if (unit.toNanos(window) < buckets)
+            throw new IllegalArgumentException("Invalid window");
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+        this.origin = clock.nanoTime();
+        this.width = unit.toNanos(window) / buckets;
+        this.buckets = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++)
+            this.buckets[i] = new Bucket();
+    }
+
+    /**
+     * Counts one event.
+     */
+    public void inc()
+    {
+        inc(1);
+    }
+
+    /**
+     * Counts the given number of events.
+     * 
+     * @param n
+     *            the number of events
+     */
+    public void inc(final long n)
+    {
+        long number = (clock.nanoTime() - origin) / width;
+        Bucket bucket = buckets[(int) (number % buckets.length)];
+
+        if (bucket.number != number)
+        {
+            synchronized (bucket)
+            {
+                if (bucket.number != number)
+                {
+                    bucket.count.reset();
+                    bucket.number = number;
+                }
+            }
+        }
+
+        bucket.count.add(n);
+    }
+
+    /**
+     * Returns the number of events counted within the window.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        long current = (clock.nanoTime() - origin) / width;
+
+        long sum = 0;
+        for (Bucket bucket : buckets)
+        {
+            long number = bucket.number;
+            if (number <= current && number > current - buckets.length)
+                sum += bucket.count.sum();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the event rate over the window.
+     * 
+     * @param unit
+     *            the time unit of the rate
+     * 
+     * @return the rate in events per given unit
+     */
+    public double getRate(final TimeUnit unit)
+    {
+        return getCount() * (double) unit.toNanos(1) / (width * buckets.length);
+    }
+
+    /**
+     * Returns the window length, rounded down to a whole number of buckets.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the window length
+     */
+    public long getWindow(final TimeUnit unit)
+    {
+        return unit.convert(width * buckets.length, TimeUnit.NANOSECONDS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,280 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.perbone.toolbox.time.MonotonicClock;
+
+/**
+ * Measures durations of code blocks without allocating per measurement.
+ * <p>
+ * Typical use is a try-with-resources block:
+ * 
+ * <pre>
+ * try (Timer.Sample s = timer.start())
+ * {
+ *     ...
+ * }
+ * </pre>
+ * 
+ * Samples come from a small per-thread pool and go back to it when closed, so a sample costs two
+ * clock reads, a thread local lookup and the recording itself. Every duration is added to a
+ * striped total accumulator and to the timer {@link Histogram}, which also keeps the count; a
+ * timer without histogram counts in a second striped accumulator instead.
+ * <p>
+ * With the system clock the two reads cost more than all the rest. A
+ * {@link io.perbone.toolbox.time.CachedClock} turns each into a volatile load, for blocks long
+ * enough to tolerate its resolution.
+ * <p>
+ * Samples of the same timer may be nested within a thread, but must be closed in the reverse
+ * order they were started, which try-with-resources does, and not be used after closing.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class Timer
+{
+    /**
+     * A running measurement; closing it records the elapsed time.
+     */
+    public static final class Sample implements AutoCloseable
+    {
+        private final Timer timer;
+
+        private final Pool pool;
+
+        private long start;
+
+        /** Whether the sample was started and not closed yet */
+        private boolean running;
+
+        private Sample(final Timer timer, final Pool pool)
+        {
+            this.timer = timer;
+            this.pool = pool;
+        }
+
+        /**
+         * Returns the time elapsed since the sample started.
+         * 
+         * @param unit
+         *            the time unit of the result
+         * 
+         * @return the elapsed time
+         */
+        public long elapsed(final TimeUnit unit)
+        {
+            return unit.convert(timer.clock.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Records the elapsed time and returns the sample to its pool; closing it again does
+         * nothing.
+         */
+        @Override
+        public void close()
+        {
+            if (!running)
+                return;
+
+            running = false;
+            long end = timer.clock.nanoTime();
+            timer.record(Math.max(end - start, 0));
+            pool.depth--;
+        }
+    }
+
+    /** The samples of one thread; only that thread touches it */
+    private static final class Pool
+    {
+        private Sample[] samples = new Sample[2];
+
+        private int depth;
+    }
+
+    private final Histogram histogram;
+
+    private final MonotonicClock clock;
+
+    /** The count of a timer without histogram */
+    private final LongAdder count;
+
+    private final LongAdder total = new LongAdder();
+
+    private final ThreadLocal<Pool> pools = new ThreadLocal<Pool>()
+    {
+        @Override
+        protected Pool initialValue()
+        {
+            return new Pool();
+        }
+    };
+
+    /**
+     * Creates a timer recording into a new default {@link Histogram}.
+     */
+    public Timer()
+    {
+        this(new Histogram());
+    }
+
+    /**
+     * Creates a timer recording into the given histogram.
+     * 
+     * @param histogram
+     *            the histogram; may be <tt>null</tt> to keep only the count and total
+     */
+    public Timer(final Histogram histogram)
+    {
+        this(histogram, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a timer recording into the given histogram and reading the given clock.
+     * 
+     * @param histogram
+     *            the histogram; may be <tt>null</tt> to keep only the count and total
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if the clock is invalid
+     */
+    public Timer(final Histogram histogram, final MonotonicClock clock) throws IllegalArgumentException
+    {
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.histogram = histogram;
+        this.clock = clock;
+        this.count = histogram == null ? new LongAdder() : null;
+    }
+
+    /**
+     * Starts a measurement.
+     * 
+     * @return the running sample, to be closed by the calling thread
+     */
+    public Sample start()
+    {
+        Pool pool = pools.get();
+
+        Sample[] samples = pool.samples;
+        int depth = pool.depth;
+        if (depth == samples.length)
+            pool.samples = samples = Arrays.copyOf(samples, depth * 2);
+
+        Sample sample = samples[depth];
+        if (sample == null)
+            samples[depth] = sample = new Sample(this, pool);
+
+        pool.depth = depth + 1;
+        sample.running = true;
+        sample.start = clock.nanoTime();
+
+        return sample;
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     * 
+     * @param nanos
+     *            the duration in nanoseconds
+     * 
+     * @throws IllegalArgumentException
+     *             if the duration is negative
+     */
+    public void record(final long nanos) throws IllegalArgumentException
+    {
+        if (nanos < 0)
+            throw new IllegalArgumentException("Invalid duration; cannot be negative");
+
+        total.add(nanos);
+        if (histogram != null)
+            histogram.record(nanos);
+        else
+            count.increment();
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     * 
+     * @param duration
+     *            the duration
+     * @param unit
+     *            the time unit of the duration
+     * 
+     * @throws IllegalArgumentException
+     *             if the duration is negative or the unit is invalid
+     */
+    public void record(final long duration, final TimeUnit unit) throws IllegalArgumentException
+    {
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        record(unit.toNanos(duration));
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        return histogram != null ? histogram.getCount() : count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded durations.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the total time
+     */
+    public long getTotalTime(final TimeUnit unit)
+    {
+        return unit.convert(total.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the histogram of the recorded durations, in nanoseconds.
+     * 
+     * @return the histogram or <tt>null</tt> if the timer keeps only the count and total
+     */
+    public Histogram getHistogram()
+    {
+        return histogram;
+    }
+
+    /**
+     * Returns the clock the timer reads.
+     * 
+     * @return the clock
+     */
+    public MonotonicClock getClock()
+    {
+        return clock;
+    }
+}
\ No newline at end of file
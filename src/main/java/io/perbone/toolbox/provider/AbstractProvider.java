@@ -22,6 +22,8 @@ package io.perbone.toolbox.provider;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.perbone.toolbox.time.Deadline;
+
 /**
  * This class provides a skeletal implementation of the {@code Provider} interface, to minimize the
  * effort required to implement this interface.
@@ -52,6 +54,8 @@ public abstract class AbstractProvider implements Provider
 
     protected String MESSAGE_FAIL_UNSUPPORTED_OPERATION = "Provider feature not supported by this implementation";
 
+    protected String MESSAGE_FAIL_DEADLINE_EXPIRED = "Aborting execution; the caller deadline has expired";
+
     protected final AtomicBoolean active = new AtomicBoolean(false);
 
     protected final AtomicBoolean shutdownInProgress = new AtomicBoolean(false);
@@ -194,6 +198,53 @@ public abstract class AbstractProvider implements Provider
             throw new IllegalStateException(MESSAGE_FAIL_CHECK_SHUTDOWN_IN_PROGRESS);
     }
 
+    /**
+     * Checks if the deadline of the calling thread has expired.
+     * <p>
+     * Long operations should call it between steps, so work is abandoned as soon as the caller
+     * has given up.
+     * 
+     * @throws OperationTimeoutException
+     *             if the caller deadline has expired
+     * 
+     * @see Deadline#current()
+     */
+    protected void checkDeadline() throws OperationTimeoutException
+    {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired())
+            throw new OperationTimeoutException(MESSAGE_FAIL_DEADLINE_EXPIRED);
+    }
+
+    /**
+     * Returns the given timeout capped at the time left before the deadline of the calling
+     * thread, if it has one.
+     * <p>
+     * Operations waiting for a resource should wait this long instead of their own fixed timeout.
+     * 
+     * @param timeout
+     *            the provider own timeout
+     * @param unit
+     *            the time unit of both the timeout and the result
+     * 
+     * @return the timeout to wait for
+     * 
+     * @throws OperationTimeoutException
+     *             if the caller deadline has expired
+     * 
+     * @see Deadline#current()
+     */
+    protected long boundedTimeout(final long timeout, final TimeUnit unit) throws OperationTimeoutException
+    {
+        Deadline deadline = Deadline.current();
+        if (deadline == null)
+            return timeout;
+        if (deadline.isExpired())
+            throw new OperationTimeoutException(MESSAGE_FAIL_DEADLINE_EXPIRED);
+
+        return deadline.cap(timeout, unit);
+    }
+
     /**
      * Activates the concrete provider implementation.
      * 
@@ -0,0 +1,273 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions from raw property values to typed values.
+ * <p>
+ * Every method throws {@link IllegalStateException} when the raw value cannot be converted, which
+ * is the contract of the typed {@link Settings} getters.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class Conversions
+{
+    private Conversions()
+    {
+        // do nothing
+    }
+
+    static int toInt(final String raw) throws IllegalStateException
+    {
+        try
+        {
+            return Integer.parseInt(raw.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid integer", raw));
+        }
+    }
+
+    static long toLong(final String raw) throws IllegalStateException
+    {
+        try
+        {
+            return Long.parseLong(raw.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid long", raw));
+        }
+    }
+
+    static double toDouble(final String raw) throws IllegalStateException
+    {
+        try
+        {
+            return Double.parseDouble(raw.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid double", raw));
+        }
+    }
+
+    /**
+     * Accepts {@code true}, {@code yes}, {@code false} and {@code no} ignoring case.
+     */
+    static boolean toBoolean(final String raw) throws IllegalStateException
+    {
+        String value = raw.trim().toLowerCase(Locale.ROOT);
+        if (value.equals("true") || value.equals("yes"))
+            return true;
+        if (value.equals("false") || value.equals("no"))
+            return false;
+
+        throw new IllegalStateException(String.format("Could not convert string [%s] into a valid boolean", raw));
+    }
+
+    /**
+     * Accepts either an ISO-8601 duration like {@code PT1M30S} or a number followed by an optional
+     * unit: {@code ns}, {@code us}, {@code ms}, {@code s}, {@code m}, {@code h} or {@code d}. A
+     * number without unit is taken as milliseconds.
+     */
+    static Duration toDuration(final String raw) throws IllegalStateException
+    {
+        String value = raw.trim();
+
+        try
+        {
+            if (!value.isEmpty() && (value.charAt(0) == 'P' || value.charAt(0) == 'p' || value.startsWith("-P")))
+                return Duration.parse(value);
+
+            int i = unitStart(value);
+            long amount = Long.parseLong(value.substring(0, i).trim());
+            String unit = value.substring(i).trim().toLowerCase(Locale.ROOT);
+
+            switch (unit)
+            {
+            case "ns":
+                return Duration.ofNanos(amount);
+            case "us":
+            case "\u00b5s":
+                return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(amount));
+            case "":
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+            case "min":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                break;
+            }
+        }
+        catch (NumberFormatException | DateTimeParseException | ArithmeticException e)
+        {
+            // falls through
+        }
+
+        throw new IllegalStateException(String.format("Could not convert string [%s] into a valid duration", raw));
+    }
+
+    /**
+     * Accepts a non negative number of bytes followed by an optional unit. Binary units
+     * ({@code KiB}, {@code MiB}, {@code GiB}, {@code TiB}) are powers of 1024 while decimal units
+     * ({@code KB}, {@code MB}, {@code GB}, {@code TB}) are powers of 1000. Units are case
+     * insensitive and the number may have a fractional part. Single letter units are rejected, as
+     * {@code 512m} would read as minutes next to a duration.
+     */
+    static long toSize(final String raw) throws IllegalStateException
+    {
+        String value = raw.trim();
+
+        try
+        {
+            int i = unitStart(value);
+            String number = value.substring(0, i).trim();
+            String unit = value.substring(i).trim().toLowerCase(Locale.ROOT);
+
+            long multiplier;
+            switch (unit)
+            {
+            case "":
+            case "b":
+                multiplier = 1L;
+                break;
+            case "kib":
+                multiplier = 1L << 10;
+                break;
+            case "mib":
+                multiplier = 1L << 20;
+                break;
+            case "gib":
+                multiplier = 1L << 30;
+                break;
+            case "tib":
+                multiplier = 1L << 40;
+                break;
+            case "kb":
+                multiplier = 1000L;
+                break;
+            case "mb":
+                multiplier = 1000L * 1000L;
+                break;
+            case "gb":
+                multiplier = 1000L * 1000L * 1000L;
+                break;
+            case "tb":
+                multiplier = 1000L * 1000L * 1000L * 1000L;
+                break;
+            default:
+                multiplier = -1;
+                break;
+            }
+
+            if (multiplier > 0 && !number.startsWith("-"))
+            {
+                if (number.indexOf('.') < 0)
+                    return Math.multiplyExact(Long.parseLong(number), multiplier);
+
+                double bytes = Double.parseDouble(number) * multiplier;
+                if (bytes <= Long.MAX_VALUE)
+                    return (long) bytes;
+            }
+        }
+        catch (NumberFormatException | ArithmeticException e)
+        {
+            // falls through
+        }
+
+        throw new IllegalStateException(String.format("Could not convert string [%s] into a valid size", raw));
+    }
+
+    /**
+     * Same as {@link #toSize(String)} but for values fitting into an integer.
+     */
+    static int toIntSize(final String raw) throws IllegalStateException
+    {
+        long size = toSize(raw);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid integer size",
+                    raw));
+
+        return (int) size;
+    }
+
+    static int[] toIntArray(final String raw, final String delimiters) throws IllegalStateException
+    {
+        StringTokenizer st = new StringTokenizer(raw, delimiters);
+        int[] array = new int[st.countTokens()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = toInt(st.nextToken());
+
+        return array;
+    }
+
+    static long[] toLongArray(final String raw, final String delimiters) throws IllegalStateException
+    {
+        StringTokenizer st = new StringTokenizer(raw, delimiters);
+        long[] array = new long[st.countTokens()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = toLong(st.nextToken());
+
+        return array;
+    }
+
+    static double[] toDoubleArray(final String raw, final String delimiters) throws IllegalStateException
+    {
+        StringTokenizer st = new StringTokenizer(raw, delimiters);
+        double[] array = new double[st.countTokens()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = toDouble(st.nextToken());
+
+        return array;
+    }
+
+    /**
+     * Returns the index of the first character after the leading number.
+     */
+    private static int unitStart(final String value)
+    {
+        int i = 0;
+        while (i < value.length())
+        {
+            char c = value.charAt(i);
+            if (!(Character.isDigit(c) || c == '.' || c == '-' || c == '+' || c == ' '))
+                break;
+            i++;
+        }
+
+        return i;
+    }
+}
\ No newline at end of file
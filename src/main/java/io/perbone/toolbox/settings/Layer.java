@@ -0,0 +1,66 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A named source of properties with a declared precedence.
+ * <p>
+ * Layers are immutable; changing a layer means replacing it with a new one. When two layers hold
+ * the same key the one with the highest precedence wins and, for equal precedences, the one added
+ * last wins.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class Layer
+{
+    /** Orders layers from the lowest to the highest priority */
+    static final Comparator<Layer> PRIORITY = new Comparator<Layer>()
+    {
+        @Override
+        public int compare(final Layer l1, final Layer l2)
+        {
+            if (l1.precedence != l2.precedence)
+                return l1.precedence < l2.precedence ? -1 : 1;
+
+            return Long.compare(l1.sequence, l2.sequence);
+        }
+    };
+
+    final String name;
+
+    final int precedence;
+
+    final long sequence;
+
+    final Map<String, String> values;
+
+    Layer(final String name, final int precedence, final long sequence, final Map<String, String> values)
+    {
+        this.name = name;
+        this.precedence = precedence;
+        this.sequence = sequence;
+        this.values = Collections.unmodifiableMap(values);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.perbone.toolbox.collection.Pair;
+
+/**
+ * Per-key read counters.
+ * <p>
+ * Each key has its own {@link LongAdder}, a striped counter, so concurrent readers of the same hot
+ * key do not contend on a single memory word.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class LookupCounters
+{
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Records one read of the given key.
+     * 
+     * @param key
+     *            the property key
+     */
+    void record(final String key)
+    {
+        LongAdder counter = counters.get(key);
+        if (counter == null)
+        {
+            counter = new LongAdder();
+            LongAdder previous = counters.putIfAbsent(key, counter);
+            if (previous != null)
+                counter = previous;
+        }
+        counter.increment();
+    }
+
+    /**
+     * Returns the read count of every key read so far.
+     * 
+     * @return the key counts
+     */
+    List<Pair<String, Long>> counts()
+    {
+        List<Pair<String, Long>> counts = new ArrayList<Pair<String, Long>>(counters.size());
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet())
+            counts.add(new Pair<String, Long>(entry.getKey(), entry.getValue().sum()));
+
+        return counts;
+    }
+
+    /**
+     * Returns the most read keys, from the hottest down.
+     * 
+     * @param limit
+     *            the maximum number of keys to return
+     * 
+     * @return the hottest keys and their counts
+     */
+    List<Pair<String, Long>> hottest(final int limit)
+    {
+        List<Pair<String, Long>> counts = counts();
+        Collections.sort(counts, new Comparator<Pair<String, Long>>()
+        {
+            @Override
+            public int compare(final Pair<String, Long> p1, final Pair<String, Long> p2)
+            {
+                int c = Long.compare(p2.second(), p1.second());
+                return c != 0 ? c : p1.first().compareTo(p2.first());
+            }
+        });
+
+        return counts.size() > limit ? new ArrayList<Pair<String, Long>>(counts.subList(0, limit)) : counts;
+    }
+
+    /**
+     * Returns the given keys that were never read.
+     * 
+     * @param keys
+     *            the loaded keys
+     * 
+     * @return the unread keys, in the given order
+     */
+    Set<String> unread(final Collection<String> keys)
+    {
+        Set<String> unread = new LinkedHashSet<String>();
+        for (String key : keys)
+        {
+            LongAdder counter = counters.get(key);
+            if (counter == null || counter.sum() == 0)
+                unread.add(key);
+        }
+
+        return unread;
+    }
+}
\ No newline at end of file
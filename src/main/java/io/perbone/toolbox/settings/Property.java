@@ -47,4 +47,19 @@ public @interface Property
      * @since 0.15.0
      */
     String delimiters() default "";
+
+    /**
+     * Binds the field as a nested object whose properties are prefixed by this property name
+     * followed by a dot.
+     * 
+     * @since 0.6.0
+     */
+    boolean nested() default false;
+
+    /**
+     * Parses the value as a byte size like {@code 512MiB}; for integral fields only.
+     * 
+     * @since 0.6.0
+     */
+    boolean size() default false;
 }
\ No newline at end of file
@@ -22,33 +22,121 @@ package io.perbone.toolbox.settings;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentHashMap;
 
 import io.perbone.toolbox.annotation.AnnotationScanner;
+import io.perbone.toolbox.annotation.FieldAccessor;
+import io.perbone.toolbox.collection.Pair;
 import io.perbone.toolbox.validation.StringValidations;
 
 /**
  * Settings utility class.
+ * <p>
+ * Properties are organized in layers, each one with a name and a declared precedence. Whenever a
+ * layer changes all of them are flattened into one resolved table so every lookup is a single hash
+ * probe no matter how many layers there are. The {@code load} methods feed the
+ * {@link #DEFAULT_LAYER default} layer.
+ * <p>
+ * Values may reference other values with <code>${name}</code> or <code>${name:default}</code>. A
+ * reference is resolved against the other keys first, then the JVM system properties and finally
+ * the process environment variables. Each value is compiled once into a template and only the keys
+ * affected by a layer change are resolved again. Reference cycles are detected at load time.
+ * <p>
+ * Keys sharing a common prefix, like {@code db.primary.pool.max}, can be reached through a
+ * {@link SettingsView} backed by a sorted index of the keys, so gathering every key under a prefix
+ * costs a binary search plus the matching keys instead of a scan of the whole table.
+ * <p>
+ * Reads can optionally be {@link #instrument(boolean) instrumented} with per-key counters to find
+ * the hottest keys and the keys loaded but never read. When instrumentation is off the read path
+ * pays nothing but a field check.
  * 
  * @author Paulo Perbone <pauloperbone@yahoo.com>
  * @since 0.1.0
  */
 public final class Settings
 {
+    /** Name of the layer fed by the {@code load} methods */
+    public static final String DEFAULT_LAYER = "default";
+
+    /** Name of the layer holding the JVM system properties */
+    public static final String SYSTEM_LAYER = "system";
+
+    /** Name of the layer holding the process environment variables */
+    public static final String ENVIRONMENT_LAYER = "environment";
+
+    /** Precedence of the {@link #DEFAULT_LAYER default} layer */
+    public static final int DEFAULT_PRECEDENCE = 0;
+
     private static final String DEFAULT_DELIMETERS = " ,;:\n";
 
-    private Map<String, String> properties = new ConcurrentHashMap<String, String>();
+    /** Source layers by name; guarded by this */
+    private final Map<String, Layer> layers = new HashMap<String, Layer>();
+
+    /** Layer creation counter used to break precedence ties; guarded by this */
+    private long sequence = 0;
+
+    /** The flattened but not yet interpolated view of all layers; guarded by this */
+    private Map<String, String> raw = Collections.emptyMap();
+
+    /** Compiled templates of values with references; guarded by this */
+    private final Map<String, Template> templates = new HashMap<String, Template>();
+
+    /** Keys referencing each name; guarded by this */
+    private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+    /** The resolved view of all layers; replaced as a whole on every layer change */
+    private volatile Map<String, String> properties = Collections.emptyMap();
+
+    /** Per-key read counters; {@code null} when instrumentation is off */
+    private volatile LookupCounters counters = null;
+
+    /** Sorted keys of the resolved table; built on demand */
+    private volatile Index index = null;
+
+    /**
+     * The sorted keys of one resolved table.
+     */
+    private static final class Index
+    {
+        final Map<String, String> table;
+
+        final String[] keys;
+
+        Index(final Map<String, String> table)
+        {
+            this.table = table;
+            this.keys = table.keySet().toArray(new String[table.size()]);
+            Arrays.sort(keys);
+        }
+    }
 
     /**
      * Injects the loaded properties into the given injectee.
      * <p>
+     * Supported field types are {@code String}, {@code int}, {@code long}, {@code double},
+     * {@code float}, {@code boolean} and their boxed types, enumerations, {@link Duration},
+     * {@code int[]}, {@code long[]}, {@code double[]} and {@code List} of strings. Primitive fields
+     * are set without boxing and keep their initial value when there is no property for them.
+     * Integral fields marked as {@link Property#size() size} accept units like {@code 512MiB}.
+     * <p>
      * TODO support for list of all types not only Strings
      * 
      * @param injectee
@@ -64,25 +152,65 @@ public final class Settings
      *             if there is no value for a not null field
      */
     public <T> T inject(final T injectee) throws IllegalArgumentException, IllegalStateException
+    {
+        return inject(injectee, "");
+    }
+
+    /**
+     * Injects the loaded properties under the given prefix into the given injectee.
+     * <p>
+     * Every property name is prepended with the prefix. Fields marked as {@link Property#nested()
+     * nested} are bound to the properties under {@code prefix + name + "."}; a {@code null} nested
+     * field is first assigned a new instance of its type.
+     * 
+     * @param injectee
+     *            the point of injection
+     * @param prefix
+     *            the prefix of the properties to inject
+     * 
+     * @return the injectee object
+     * 
+     * @throws IllegalArgumentException
+     *             if either the injectee or the prefix is invalid
+     * @throws IllegalArgumentException
+     *             if the value can not be set into the field
+     * @throws IllegalStateException
+     *             if there is no value for a not null field
+     */
+    public <T> T inject(final T injectee, final String prefix) throws IllegalArgumentException, IllegalStateException
     {
         if (injectee == null)
             throw new IllegalArgumentException("Invalid injectee object");
+        if (prefix == null)
+            throw new IllegalArgumentException("Invalid prefix");
 
-        List<Field> annotatedFields = AnnotationScanner.scanFields(injectee.getClass(), Property.class);
+        List<FieldAccessor> accessors = AnnotationScanner.scanFieldAccessors(injectee.getClass(), Property.class);
 
         /**
          * Set field values
          */
-        for (Field f : annotatedFields)
+        for (FieldAccessor accessor : accessors)
         {
+            Field f = accessor.field();
+
             try
             {
-                f.setAccessible(true);
-
                 Property annotation = f.getAnnotation(Property.class);
 
                 /* Property's name defaults to the field's name */
-                String key = StringValidations.isValid(annotation.name()) ? annotation.name() : f.getName();
+                String key = prefix
+                        + (StringValidations.isValid(annotation.name()) ? annotation.name() : f.getName());
+
+                /* Nested objects are bound to the properties under their own prefix */
+                if (annotation.nested())
+                {
+                    Object nested = accessor.get(injectee);
+                    if (nested == null)
+                        nested = instantiate(f.getType());
+                    accessor.set(injectee, inject(nested, key + "."));
+                    continue;
+                }
+
                 /* Default value */
                 String defaultValue = StringValidations.isValid(annotation.value()) ? annotation.value() : null;
                 /* Nullable flag */
@@ -95,7 +223,43 @@ public final class Settings
                 Object value = null;
                 Class<?> type = f.getType();
 
-                if (type == String.class)
+                /* Primitives are set straight into the field without boxing */
+                if (type.isPrimitive())
+                {
+                    String raw = getString(key, defaultValue);
+                    if (raw == null)
+                    {
+                        if (!nullable)
+                            throw new IllegalStateException(
+                                    String.format("Missing value for not null [%s] field ", f.getName()));
+                        continue;
+                    }
+
+                    if (type == int.class)
+                        accessor.setInt(injectee,
+                                annotation.size() ? Conversions.toIntSize(raw) : Conversions.toInt(raw));
+                    else if (type == long.class)
+                        accessor.setLong(injectee,
+                                annotation.size() ? Conversions.toSize(raw) : Conversions.toLong(raw));
+                    else if (type == double.class)
+                        accessor.setDouble(injectee, Conversions.toDouble(raw));
+                    else if (type == float.class)
+                        accessor.setFloat(injectee, (float) Conversions.toDouble(raw));
+                    else if (type == boolean.class)
+                        accessor.setBoolean(injectee, Conversions.toBoolean(raw));
+                    else
+                        throw new IllegalArgumentException("Unsupported primitive type");
+                    continue;
+                }
+
+                if (annotation.size() && (type == Long.class || type == Integer.class))
+                {
+                    String raw = getString(key, defaultValue);
+                    if (raw != null)
+                        value = type == Long.class ? (Object) Conversions.toSize(raw)
+                                : (Object) Conversions.toIntSize(raw);
+                }
+                else if (type == String.class)
                     value = getString(key, defaultValue);
                 else if (type == Integer.class)
                     value = isValid(defaultValue) ? getInteger(key, Integer.parseInt(defaultValue)) : getInteger(key);
@@ -104,6 +268,27 @@ public final class Settings
                 else if (type == Boolean.class)
                     value = isValid(defaultValue) ? getBoolean(key, Boolean.parseBoolean(defaultValue))
                             : getBoolean(key);
+                else if (type == Double.class)
+                    value = isValid(defaultValue) ? getDouble(key, Double.parseDouble(defaultValue)) : getDouble(key);
+                else if (type == Float.class)
+                {
+                    Double d = isValid(defaultValue) ? getDouble(key, Double.parseDouble(defaultValue))
+                            : getDouble(key);
+                    value = d == null ? null : d.floatValue();
+                }
+                else if (type == Duration.class)
+                {
+                    String raw = getString(key, defaultValue);
+                    value = raw == null ? null : Conversions.toDuration(raw);
+                }
+                else if (type == int[].class || type == long[].class || type == double[].class)
+                {
+                    String raw = getString(key, defaultValue);
+                    if (raw != null)
+                        value = type == int[].class ? Conversions.toIntArray(raw, delimiters)
+                                : type == long[].class ? Conversions.toLongArray(raw, delimiters)
+                                        : Conversions.toDoubleArray(raw, delimiters);
+                }
                 else if (type.isEnum())
                     value = getEnum(type, key);
                 else if (type == List.class && getString(key, defaultValue) != null)
@@ -123,9 +308,9 @@ public final class Settings
                             String.format("Missing value for not null [%s] field ", f.getName()));
 
                 /* Sets default values if the set contains no match */
-                f.set(injectee, value);
+                accessor.set(injectee, value);
             }
-            catch (IllegalAccessException | IllegalArgumentException e)
+            catch (IllegalArgumentException e)
             {
                 throw new IllegalArgumentException(String.format("Cannot assign %s to a %s field",
                         injectee.getClass().getName(), f.getType().getName()), e);
@@ -148,22 +333,32 @@ public final class Settings
      */
     public Settings load(final String path) throws FileNotFoundException
     {
-        Properties props = new Properties();
+        return merge(read(path, null));
+    }
 
-        try
-        {
-            File file = new java.io.File(new URI(path));
-            FileInputStream fis = new FileInputStream(file);
-            props.load(fis);
-            load(props);
-            props.clear();
-            fis.close();
-        }
-        catch (Exception e)
-        {
-            throw new FileNotFoundException("Could not load [" + path + "]");
-        }
-        return this;
+    /**
+     * Loads the given property file into this object through a binary cache.
+     * <p>
+     * The cache file holds the already parsed properties keyed by the CRC64 checksum of the
+     * property file. When the checksum matches the cache is memory-mapped and decoded instead of
+     * parsing the property file again; otherwise the file is parsed and the cache rewritten.
+     * <p>
+     * It appends new properties and updates the existent ones.
+     * 
+     * @param path
+     *            the property file path
+     * @param cache
+     *            the cache file path; it does not need to exist
+     * 
+     * @throws FileNotFoundException
+     *             if the access to the file has failed
+     */
+    public Settings load(final String path, final String cache) throws FileNotFoundException
+    {
+        if (cache == null)
+            throw new IllegalArgumentException("Invalid cache path");
+
+        return merge(read(path, cache));
     }
 
     /**
@@ -182,10 +377,7 @@ public final class Settings
         if (props == null)
             throw new IllegalArgumentException("Invalid properties");
 
-        for (Map.Entry<Object, Object> entry : props.entrySet())
-            properties.put((String) entry.getKey(), (String) entry.getValue());
-
-        return this;
+        return merge(toMap(props));
     }
 
     /**
@@ -204,232 +396,745 @@ public final class Settings
         if (props == null)
             throw new IllegalArgumentException("Invalid properties");
 
-        for (Map.Entry<String, String> entry : props.entrySet())
-            properties.put(entry.getKey(), entry.getValue());
-
-        return this;
+        return merge(props);
     }
 
     /**
-     * Returns the specified key value as a string object.
+     * Adds a new layer or replaces the content of an existent one.
+     * <p>
+     * A replaced layer keeps its original position among the layers of the same precedence.
      * 
-     * @param key
-     *            the property key
+     * @param name
+     *            the layer name
+     * @param precedence
+     *            the layer precedence; higher values take priority over lower ones
+     * @param props
+     *            the layer properties
      * 
-     * @return the value of the property or {@code null} if the property is not found
+     * @return this object
+     * 
+     * @throws IllegalArgumentException
+     *             if either the name or the map object is invalid
+     * @throws InvalidSettingsException
+     *             if the new values introduce a reference cycle; the layer is left untouched
      */
-    public String getString(final String key)
+    public Settings layer(final String name, final int precedence, final Map<String, String> props)
+            throws IllegalArgumentException, InvalidSettingsException
     {
-        String value = properties.get(key);
-        return value;
+        if (!isValid(name))
+            throw new IllegalArgumentException("Invalid layer name");
+        if (props == null)
+            throw new IllegalArgumentException("Invalid properties");
+
+        synchronized (this)
+        {
+            Layer old = layers.get(name);
+            long seq = old != null && old.precedence == precedence ? old.sequence : sequence++;
+            layers.put(name, new Layer(name, precedence, seq, new HashMap<String, String>(props)));
+            try
+            {
+                flatten();
+            }
+            catch (InvalidSettingsException e)
+            {
+                rollback(name, old);
+                throw e;
+            }
+        }
+
+        return this;
     }
 
     /**
-     * Returns the specified key value as a string object.
+     * Adds a new layer or replaces the content of an existent one.
      * 
-     * @param key
-     *            the property key
-     * @param value
-     *            the default value
+     * @param name
+     *            the layer name
+     * @param precedence
+     *            the layer precedence; higher values take priority over lower ones
+     * @param props
+     *            the layer properties
      * 
-     * @return the value of the property or the default value if the property is not found
+     * @return this object
+     * 
+     * @throws IllegalArgumentException
+     *             if either the name or the properties object is invalid
+     * 
+     * @see #layer(String, int, Map)
      */
-    public String getString(final String key, final String value)
+    public Settings layer(final String name, final int precedence, final Properties props)
+            throws IllegalArgumentException
     {
-        return properties.containsKey(key) ? properties.get(key) : value;
+        if (props == null)
+            throw new IllegalArgumentException("Invalid properties");
+
+        return layer(name, precedence, toMap(props));
     }
 
     /**
-     * Returns the specified key value as an integer object.
+     * Adds a new layer or replaces the content of an existent one with the given property file.
      * 
-     * @param key
-     *            the property key
+     * @param name
+     *            the layer name
+     * @param precedence
+     *            the layer precedence; higher values take priority over lower ones
+     * @param path
+     *            the property file path
      * 
-     * @return the value of the property or {@code null} if the property is not found
+     * @return this object
      * 
-     * @throws IllegalStateException
-     *             if the value cannot be converted to the requested type
+     * @throws IllegalArgumentException
+     *             if the name is invalid
+     * @throws FileNotFoundException
+     *             if the access to the file has failed
+     * 
+     * @see #layer(String, int, Map)
      */
-    public Integer getInteger(final String key) throws IllegalStateException
+    public Settings layer(final String name, final int precedence, final String path)
+            throws IllegalArgumentException, FileNotFoundException
     {
-        if (!properties.containsKey(key))
-            return null;
-
-        String raw = properties.get(key);
-        try
-        {
-            return Integer.parseInt(raw);
-        }
-        catch (NumberFormatException e)
-        {
-            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid integer", raw));
-        }
+        return layer(name, precedence, read(path, null));
     }
 
     /**
-     * Returns the specified key value as an integer object.
+     * Adds a new layer or replaces the content of an existent one with the given property file,
+     * read through a binary cache.
      * 
-     * @param key
-     *            the property key
-     * @param value
-     *            the default value
+     * @param name
+     *            the layer name
+     * @param precedence
+     *            the layer precedence; higher values take priority over lower ones
+     * @param path
+     *            the property file path
+     * @param cache
+     *            the cache file path; it does not need to exist
      * 
-     * @return the value of the property or the default value if the property is not found
+     * @return this object
+     * 
+     * @throws IllegalArgumentException
+     *             if either the name or the cache path is invalid
+     * @throws FileNotFoundException
+     *             if the access to the file has failed
+     * 
+     * @see #load(String, String)
      */
-    public Integer getInteger(final String key, final Integer value)
+    public Settings layer(final String name, final int precedence, final String path, final String cache)
+            throws IllegalArgumentException, FileNotFoundException
     {
-        if (!properties.containsKey(key))
-            return value;
+        if (cache == null)
+            throw new IllegalArgumentException("Invalid cache path");
 
-        String raw = properties.get(key);
-        try
-        {
-            return Integer.parseInt(raw);
-        }
-        catch (NumberFormatException e)
-        {
-            return value;
-        }
+        return layer(name, precedence, read(path, cache));
     }
 
     /**
-     * Returns the specified key value as a long object.
-     * 
-     * @param key
-     *            the property key
+     * Adds (or refreshes) the {@link #SYSTEM_LAYER system} layer with a snapshot of the current JVM
+     * system properties.
      * 
-     * @return the value of the property or {@code null} if the property is not found
+     * @param precedence
+     *            the layer precedence
      * 
-     * @throws IllegalStateException
-     *             if the value cannot be converted to the requested type
+     * @return this object
      */
-    public Long getLong(final String key) throws IllegalStateException
+    public Settings systemProperties(final int precedence)
     {
-        if (!properties.containsKey(key))
-            return null;
-
-        String raw = properties.get(key);
-        try
-        {
-            return Long.parseLong(raw);
-        }
-        catch (NumberFormatException e)
-        {
-            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid long", raw));
-        }
+        return layer(SYSTEM_LAYER, precedence, toMap(System.getProperties()));
     }
 
     /**
-     * Returns the specified key value as a long object.
+     * Adds (or refreshes) the {@link #ENVIRONMENT_LAYER environment} layer with a snapshot of the
+     * current process environment variables.
      * 
-     * @param key
-     *            the property key
-     * @param value
-     *            the default value
+     * @param precedence
+     *            the layer precedence
      * 
-     * @return the value of the property or the default value if the property is not found
+     * @return this object
      */
-    public Long getLong(final String key, final Long value)
+    public Settings environment(final int precedence)
     {
-        if (!properties.containsKey(key))
-            return value;
-
-        String raw = properties.get(key);
-        try
-        {
-            return Long.parseLong(raw);
-        }
-        catch (NumberFormatException e)
-        {
-            return value;
-        }
+        return layer(ENVIRONMENT_LAYER, precedence, System.getenv());
     }
 
     /**
-     * Returns the specified key value as a boolean object.
+     * Removes the given layer.
      * 
-     * @param key
-     *            the property key
+     * @param name
+     *            the layer name
      * 
-     * @return the value of the property or {@code null} if the property is not found
+     * @return this object
      * 
-     * @throws IllegalStateException
-     *             if the value cannot be converted to the requested type
+     * @throws InvalidSettingsException
+     *             if the removal introduces a reference cycle; the layer is left untouched
      */
-    public Boolean getBoolean(final String key) throws IllegalStateException
+    public synchronized Settings removeLayer(final String name) throws InvalidSettingsException
     {
-        if (!properties.containsKey(key))
-            return false;
+        Layer old = layers.remove(name);
+        if (old != null)
+        {
+            try
+            {
+                flatten();
+            }
+            catch (InvalidSettingsException e)
+            {
+                rollback(name, old);
+                throw e;
+            }
+        }
 
-        String raw = properties.get(key);
-        if (!raw.toLowerCase().matches("true|yes|false|no"))
-            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid integer", raw));
-        else
-            return Boolean.parseBoolean(raw);
+        return this;
     }
 
     /**
-     * Returns the specified key value as a boolean object.
-     * 
-     * @param key
-     *            the property key
-     * @param value
-     *            the default value
+     * Returns the current layer names ordered from the lowest to the highest priority.
      * 
-     * @return the value of the property or the default value if the property is not found
+     * @return the list of layer names
      */
-    public Boolean getBoolean(final String key, final Boolean value)
+    public synchronized List<String> layers()
     {
-        if (!properties.containsKey(key))
-            return value;
+        List<Layer> sorted = new ArrayList<Layer>(layers.values());
+        Collections.sort(sorted, Layer.PRIORITY);
 
-        String raw = properties.get(key);
-        return raw.toLowerCase().matches("true|yes|false|no") ? Boolean.parseBoolean(raw) : value;
+        List<String> names = new ArrayList<String>(sorted.size());
+        for (Layer l : sorted)
+            names.add(l.name);
+
+        return names;
     }
 
     /**
-     * Returns the specified key value as an integer object.
+     * Returns a live view over the keys starting with the given prefix.
      * 
-     * @param type
-     *            the enumeration class type
-     * @param key
-     *            the property key
+     * @param prefix
+     *            the keys prefix, usually ending with a dot like {@code "db.primary."}
      * 
-     * @return the value of the property or {@code null} if the property is not found
+     * @return the view object
      * 
      * @throws IllegalArgumentException
-     *             if the type is invalid
-     * @throws IllegalArgumentException
-     *             if the type is not an enumeration
-     * @throws IllegalStateException
-     *             if the value cannot be converted to the requested type
+     *             if the prefix is invalid
      */
-    public Enum<?> getEnum(final Class<?> type, final String key) throws IllegalArgumentException, IllegalStateException
+    public SettingsView view(final String prefix) throws IllegalArgumentException
     {
-        if (type == null)
-            throw new IllegalArgumentException("Invalid type class");
-        if (!type.isEnum())
-            throw new IllegalArgumentException("Type class is not enum");
-
-        if (!properties.containsKey(key))
-            return null;
+        if (prefix == null)
+            throw new IllegalArgumentException("Invalid prefix");
 
-        String raw = properties.get(key);
-        for (Enum<?> e : (Enum[]) type.getEnumConstants())
-        {
-            if (e.toString().equalsIgnoreCase(raw))
-                return e;
-        }
-        throw new IllegalStateException(String.format("Could not convert string [%s] into a valid enum of type [%s]",
-                raw, type.getCanonicalName()));
+        return new SettingsView(this, prefix);
     }
 
     /**
-     * Returns the specified key value as a boolean object.
+     * Returns all keys currently loaded, in ascending order.
      * 
-     * @param type
-     *            the enumeration class type
-     * @param key
+     * @return the set of keys
+     */
+    public Set<String> keys()
+    {
+        return keys("", false);
+    }
+
+    /**
+     * Returns a copy of all properties currently loaded, in ascending key order.
+     * 
+     * @return the map of properties
+     */
+    public Map<String, String> toMap()
+    {
+        return toMap("", false);
+    }
+
+    /**
+     * Returns the keys starting with the given prefix, in ascending order.
+     * 
+     * @param prefix
+     *            the keys prefix
+     * @param relative
+     *            whether to strip the prefix from the returned keys
+     * 
+     * @return the set of keys
+     */
+    Set<String> keys(final String prefix, final boolean relative)
+    {
+        return toMap(prefix, relative).keySet();
+    }
+
+    /**
+     * Returns the properties whose keys start with the given prefix, in ascending key order.
+     * 
+     * @param prefix
+     *            the keys prefix
+     * @param relative
+     *            whether to strip the prefix from the returned keys
+     * 
+     * @return the map of properties
+     */
+    Map<String, String> toMap(final String prefix, final boolean relative)
+    {
+        Map<String, String> table = properties;
+
+        Index idx = index;
+        if (idx == null || idx.table != table)
+            index = idx = new Index(table);
+
+        int i = Arrays.binarySearch(idx.keys, prefix);
+        if (i < 0)
+            i = -i - 1;
+
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (; i < idx.keys.length && idx.keys[i].startsWith(prefix); i++)
+            map.put(relative ? idx.keys[i].substring(prefix.length()) : idx.keys[i], table.get(idx.keys[i]));
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Switches the per-key read counters on or off.
+     * <p>
+     * Switching them off discards every count; switching them on again starts from zero.
+     * 
+     * @param enabled
+     *            whether to count reads
+     * 
+     * @return this object
+     */
+    public Settings instrument(final boolean enabled)
+    {
+        counters = enabled ? new LookupCounters() : null;
+        return this;
+    }
+
+    /**
+     * Tells whether or not reads are being counted.
+     * 
+     * @return <tt>true</tt> if instrumentation is on; <tt>false</tt> otherwise
+     */
+    public boolean isInstrumented()
+    {
+        return counters != null;
+    }
+
+    /**
+     * Returns the most read keys since instrumentation was switched on, from the hottest down.
+     * <p>
+     * Keys read but not loaded are reported as well, as those reads fell back to default values.
+     * 
+     * @param limit
+     *            the maximum number of keys to return
+     * 
+     * @return the keys paired with their read count; empty if instrumentation is off
+     * 
+     * @throws IllegalArgumentException
+     *             if the limit is negative
+     */
+    public List<Pair<String, Long>> hotKeys(final int limit) throws IllegalArgumentException
+    {
+        if (limit < 0)
+            throw new IllegalArgumentException("Invalid limit; cannot be negative");
+
+        LookupCounters c = counters;
+        return c == null ? new ArrayList<Pair<String, Long>>() : c.hottest(limit);
+    }
+
+    /**
+     * Returns the loaded keys never read since instrumentation was switched on, in ascending order.
+     * 
+     * @return the set of unread keys; empty if instrumentation is off
+     */
+    public Set<String> unreadKeys()
+    {
+        LookupCounters c = counters;
+        return c == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(c.unread(keys()));
+    }
+
+    /**
+     * Returns the specified key value as it was loaded, without resolving its references.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the raw value of the property or {@code null} if the property is not found
+     */
+    public synchronized String getRawString(final String key)
+    {
+        return raw.get(key);
+    }
+
+    /**
+     * Returns the specified key value as a string object.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     */
+    public String getString(final String key)
+    {
+        return lookup(key);
+    }
+
+    /**
+     * Returns the specified key value as a string object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     */
+    public String getString(final String key, final String value)
+    {
+        String raw = lookup(key);
+        return raw != null ? raw : value;
+    }
+
+    /**
+     * Returns the specified key value as an integer object.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     */
+    public Integer getInteger(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return null;
+
+        try
+        {
+            return Integer.parseInt(raw);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid integer", raw));
+        }
+    }
+
+    /**
+     * Returns the specified key value as an integer object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     */
+    public Integer getInteger(final String key, final Integer value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Integer.parseInt(raw);
+        }
+        catch (NumberFormatException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as a long object.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     */
+    public Long getLong(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return null;
+
+        try
+        {
+            return Long.parseLong(raw);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalStateException(String.format("Could not convert string [%s] into a valid long", raw));
+        }
+    }
+
+    /**
+     * Returns the specified key value as a long object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     */
+    public Long getLong(final String key, final Long value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Long.parseLong(raw);
+        }
+        catch (NumberFormatException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as a boolean object.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     */
+    public Boolean getBoolean(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return false;
+
+        return Conversions.toBoolean(raw);
+    }
+
+    /**
+     * Returns the specified key value as a boolean object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     */
+    public Boolean getBoolean(final String key, final Boolean value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Conversions.toBoolean(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as a double object.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     * 
+     * @since 0.6.0
+     */
+    public Double getDouble(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        return raw == null ? null : Conversions.toDouble(raw);
+    }
+
+    /**
+     * Returns the specified key value as a double object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     * 
+     * @since 0.6.0
+     */
+    public Double getDouble(final String key, final Double value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Conversions.toDouble(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as a duration object.
+     * <p>
+     * The value is either an ISO-8601 duration like {@code PT1M30S} or a number followed by one of
+     * the units {@code ns}, {@code us}, {@code ms}, {@code s}, {@code m}, {@code h} or {@code d}. A
+     * number without unit is taken as milliseconds.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     * 
+     * @since 0.6.0
+     */
+    public Duration getDuration(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        return raw == null ? null : Conversions.toDuration(raw);
+    }
+
+    /**
+     * Returns the specified key value as a duration object.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     * 
+     * @since 0.6.0
+     * 
+     * @see #getDuration(String)
+     */
+    public Duration getDuration(final String key, final Duration value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Conversions.toDuration(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as a number of bytes.
+     * <p>
+     * The value is a number followed by an optional unit. Binary units ({@code KiB}, {@code MiB},
+     * {@code GiB}, {@code TiB}) and single letters ({@code K}, {@code M}, {@code G}, {@code T}) are
+     * powers of 1024 while decimal units ({@code KB}, {@code MB}, {@code GB}, {@code TB}) are powers
+     * of 1000.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     * 
+     * @since 0.6.0
+     */
+    public Long getSize(final String key) throws IllegalStateException
+    {
+        String raw = lookup(key);
+        return raw == null ? null : Conversions.toSize(raw);
+    }
+
+    /**
+     * Returns the specified key value as a number of bytes.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the default value
+     * 
+     * @return the value of the property or the default value if the property is not found
+     * 
+     * @since 0.6.0
+     * 
+     * @see #getSize(String)
+     */
+    public Long getSize(final String key, final Long value)
+    {
+        String raw = lookup(key);
+        if (raw == null)
+            return value;
+
+        try
+        {
+            return Conversions.toSize(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the specified key value as an integer object.
+     * 
+     * @param type
+     *            the enumeration class type
+     * @param key
+     *            the property key
+     * 
+     * @return the value of the property or {@code null} if the property is not found
+     * 
+     * @throws IllegalArgumentException
+     *             if the type is invalid
+     * @throws IllegalArgumentException
+     *             if the type is not an enumeration
+     * @throws IllegalStateException
+     *             if the value cannot be converted to the requested type
+     */
+    public Enum<?> getEnum(final Class<?> type, final String key) throws IllegalArgumentException, IllegalStateException
+    {
+        if (type == null)
+            throw new IllegalArgumentException("Invalid type class");
+        if (!type.isEnum())
+            throw new IllegalArgumentException("Type class is not enum");
+
+        String raw = lookup(key);
+        if (raw == null)
+            return null;
+
+        for (Enum<?> e : (Enum[]) type.getEnumConstants())
+        {
+            if (e.toString().equalsIgnoreCase(raw))
+                return e;
+        }
+        throw new IllegalStateException(String.format("Could not convert string [%s] into a valid enum of type [%s]",
+                raw, type.getCanonicalName()));
+    }
+
+    /**
+     * Returns the specified key value as a boolean object.
+     * 
+     * @param type
+     *            the enumeration class type
+     * @param key
      *            the property key
      * @param value
      *            the default value
@@ -443,10 +1148,10 @@ public final class Settings
         if (!type.isEnum())
             throw new IllegalArgumentException("Type class is not enum");
 
-        if (!properties.containsKey(key))
+        String raw = lookup(key);
+        if (raw == null)
             return value;
 
-        String raw = properties.get(key);
         for (Enum<?> e : (Enum[]) type.getEnumConstants())
         {
             if (e.toString().equalsIgnoreCase(raw))
@@ -455,6 +1160,319 @@ public final class Settings
         return value;
     }
 
+    /**
+     * Returns the resolved value of the given key, counting the read when instrumentation is on.
+     * 
+     * @param key
+     *            the property key
+     * 
+     * @return the resolved value or {@code null} if the property is not found
+     */
+    private String lookup(final String key)
+    {
+        LookupCounters c = counters;
+        if (c != null)
+            c.record(key);
+
+        return properties.get(key);
+    }
+
+    /**
+     * Merges the given properties into the default layer.
+     * 
+     * @param props
+     *            the properties to merge
+     * 
+     * @return this object
+     */
+    private synchronized Settings merge(final Map<String, String> props)
+    {
+        Layer old = layers.get(DEFAULT_LAYER);
+
+        Map<String, String> values = old == null ? new HashMap<String, String>()
+                : new HashMap<String, String>(old.values);
+        values.putAll(props);
+
+        return layer(DEFAULT_LAYER, old == null ? DEFAULT_PRECEDENCE : old.precedence, values);
+    }
+
+    /**
+     * Restores a layer after a failed change.
+     * <p>
+     * Must be called while holding this object monitor.
+     * 
+     * @param name
+     *            the layer name
+     * @param old
+     *            the previous layer; {@code null} if there was none
+     */
+    private void rollback(final String name, final Layer old)
+    {
+        if (old == null)
+            layers.remove(name);
+        else
+            layers.put(name, old);
+
+        flatten();
+    }
+
+    /**
+     * Flattens all layers into a new resolved table and publishes it.
+     * <p>
+     * Only the keys whose raw value has changed, and the keys depending on them, are resolved
+     * again; every other value is carried over from the current table. Must be called while holding
+     * this object monitor.
+     * 
+     * @throws InvalidSettingsException
+     *             if there is a reference cycle; the current table is kept
+     */
+    private void flatten() throws InvalidSettingsException
+    {
+        List<Layer> sorted = new ArrayList<Layer>(layers.values());
+        Collections.sort(sorted, Layer.PRIORITY);
+
+        int size = 0;
+        for (Layer l : sorted)
+            size += l.values.size();
+
+        final Map<String, String> flat = new HashMap<String, String>(capacity(size));
+        for (Layer l : sorted)
+            flat.putAll(l.values);
+
+        /* Finds out the changed keys and keeps their templates up to date */
+        Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, String> entry : flat.entrySet())
+        {
+            String old = raw.get(entry.getKey());
+            if (old == null || !old.equals(entry.getValue()))
+                changed.add(entry.getKey());
+        }
+        for (String key : raw.keySet())
+        {
+            if (!flat.containsKey(key))
+                changed.add(key);
+        }
+        for (String key : changed)
+            compile(key, flat.get(key));
+
+        raw = flat;
+
+        /* Collects every key that transitively depends on a changed one */
+        final Set<String> pending = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>(changed);
+        while (!queue.isEmpty())
+        {
+            String key = queue.poll();
+            if (flat.containsKey(key) && !pending.add(key))
+                continue;
+
+            Set<String> deps = dependents.get(key);
+            if (deps != null)
+            {
+                for (String d : deps)
+                {
+                    if (!pending.contains(d))
+                        queue.add(d);
+                }
+            }
+        }
+
+        final Map<String, String> table = new HashMap<String, String>(capacity(flat.size()));
+        for (Map.Entry<String, String> entry : properties.entrySet())
+        {
+            if (flat.containsKey(entry.getKey()) && !pending.contains(entry.getKey()))
+                table.put(entry.getKey(), entry.getValue());
+        }
+
+        Set<String> visiting = new LinkedHashSet<String>();
+        for (String key : new ArrayList<String>(pending))
+            resolve(key, flat, table, pending, visiting);
+
+        properties = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Compiles the given key value and updates the dependency tracking.
+     * 
+     * @param key
+     *            the property key
+     * @param value
+     *            the new raw value; {@code null} if the key was removed
+     */
+    private void compile(final String key, final String value)
+    {
+        Template old = templates.remove(key);
+        if (old != null)
+        {
+            for (String ref : old.references())
+            {
+                Set<String> deps = dependents.get(ref);
+                deps.remove(key);
+                if (deps.isEmpty())
+                    dependents.remove(ref);
+            }
+        }
+
+        Template template = Template.compile(value);
+        if (template != null)
+        {
+            templates.put(key, template);
+            for (String ref : template.references())
+            {
+                Set<String> deps = dependents.get(ref);
+                if (deps == null)
+                    dependents.put(ref, deps = new HashSet<String>());
+                deps.add(key);
+            }
+        }
+    }
+
+    /**
+     * Resolves the given key value into the table, resolving first any pending key it references.
+     * 
+     * @param key
+     *            the property key
+     * @param flat
+     *            the raw values
+     * @param table
+     *            the resolved values
+     * @param pending
+     *            the keys not yet resolved
+     * @param visiting
+     *            the keys being resolved down the current path
+     * 
+     * @return the resolved value
+     * 
+     * @throws InvalidSettingsException
+     *             if there is a reference cycle
+     */
+    private String resolve(final String key, final Map<String, String> flat, final Map<String, String> table,
+            final Set<String> pending, final Set<String> visiting) throws InvalidSettingsException
+    {
+        if (!pending.contains(key))
+            return table.get(key);
+
+        if (!visiting.add(key))
+        {
+            StringBuilder cycle = new StringBuilder();
+            for (String k : visiting)
+                cycle.append(k).append(" -> ");
+            throw new InvalidSettingsException(String.format("Reference cycle detected [%s%s]", cycle, key));
+        }
+
+        Template template = templates.get(key);
+        String value = template == null ? flat.get(key) : template.render(new Template.Resolver()
+        {
+            @Override
+            public String resolve(final String name)
+            {
+                if (flat.containsKey(name))
+                    return Settings.this.resolve(name, flat, table, pending, visiting);
+
+                String property = System.getProperty(name);
+                return property != null ? property : System.getenv(name);
+            }
+        });
+
+        visiting.remove(key);
+        pending.remove(key);
+        table.put(key, value);
+
+        return value;
+    }
+
+    /**
+     * Creates a new instance of the given nested type through its no-argument constructor.
+     * 
+     * @param type
+     *            the nested type
+     * 
+     * @return the new instance
+     * 
+     * @throws IllegalArgumentException
+     *             if the type cannot be instantiated
+     */
+    private static Object instantiate(final Class<?> type) throws IllegalArgumentException
+    {
+        try
+        {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalArgumentException(String.format("Cannot instantiate nested %s object", type.getName()),
+                    e);
+        }
+    }
+
+    /**
+     * Returns the initial capacity of a hash map meant to hold the given number of entries.
+     * 
+     * @param size
+     *            the expected number of entries
+     * 
+     * @return the initial capacity
+     */
+    private static int capacity(final int size)
+    {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    /**
+     * Reads the given property file.
+     * 
+     * @param path
+     *            the property file path
+     * @param cache
+     *            the cache file path; {@code null} for no cache
+     * 
+     * @return the file properties
+     * 
+     * @throws FileNotFoundException
+     *             if the access to the file has failed
+     */
+    private static Map<String, String> read(final String path, final String cache) throws FileNotFoundException
+    {
+        try
+        {
+            File file = new File(new URI(path));
+
+            if (cache != null)
+                return SettingsCache.load(file, new File(new URI(cache)));
+
+            Properties props = new Properties();
+            try (InputStream is = new FileInputStream(file))
+            {
+                props.load(is);
+            }
+
+            return toMap(props);
+        }
+        catch (Exception e)
+        {
+            throw new FileNotFoundException("Could not load [" + path + "]");
+        }
+    }
+
+    /**
+     * Copies the string entries of the given properties into a new map.
+     * 
+     * @param props
+     *            the properties to copy
+     * 
+     * @return the new map
+     */
+    private static Map<String, String> toMap(final Properties props)
+    {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String key : props.stringPropertyNames())
+            map.put(key, props.getProperty(key));
+
+        return map;
+    }
+
     /**
      * 
      * @param str
@@ -0,0 +1,237 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import io.perbone.toolbox.hash.CRC64;
+
+/**
+ * Compact binary cache of a parsed property file.
+ * <p>
+ * The cache is keyed by the CRC64 checksum of the source file content. On a hit the cache file is
+ * memory-mapped and decoded straight into a map, skipping {@link Properties#load} altogether; on a
+ * miss (missing, stale or corrupted cache) the source is parsed as usual and the cache is rewritten.
+ * Writing the cache is best effort; a failure never prevents the properties from being loaded.
+ * <p>
+ * Layout: magic, version, source checksum, source length, entry count, entries as length-prefixed
+ * UTF-8 key and value pairs and, at last, the entries checksum.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class SettingsCache
+{
+    private static final int MAGIC = 0x54425343; // TBSC
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    private SettingsCache()
+    {
+        // do nothing
+    }
+
+    /**
+     * Loads the given property file through the given cache file.
+     * 
+     * @param source
+     *            the property file
+     * @param cache
+     *            the cache file; it does not need to exist
+     * 
+     * @return the file properties
+     * 
+     * @throws IOException
+     *             if the property file cannot be read
+     */
+    static Map<String, String> load(final File source, final File cache) throws IOException
+    {
+        byte[] content = Files.readAllBytes(source.toPath());
+        long checksum = CRC64.checksum(content);
+
+        Map<String, String> props = read(cache, checksum, content.length);
+        if (props == null)
+        {
+            props = parse(content);
+            write(cache, checksum, content.length, props);
+        }
+
+        return props;
+    }
+
+    /**
+     * Reads the cache file.
+     * 
+     * @param cache
+     *            the cache file
+     * @param checksum
+     *            the expected source checksum
+     * @param length
+     *            the expected source length
+     * 
+     * @return the cached properties or {@code null} if the cache is missing, stale or corrupted
+     */
+    private static Map<String, String> read(final File cache, final long checksum, final long length)
+    {
+        if (!cache.isFile() || cache.length() < HEADER_SIZE + 8)
+            return null;
+
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum
+                    || buffer.getLong() != length)
+                return null;
+
+            int count = buffer.getInt();
+
+            ByteBuffer entries = buffer.slice();
+            entries.limit(entries.limit() - 8);
+            if (CRC64.checksum(entries) != buffer.getLong(buffer.limit() - 8))
+                return null;
+
+            Map<String, String> props = new HashMap<String, String>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++)
+                props.put(decode(entries), decode(entries));
+
+            return props;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null; // treat it as a cache miss
+        }
+    }
+
+    /**
+     * Writes the cache file atomically.
+     * 
+     * @param cache
+     *            the cache file
+     * @param checksum
+     *            the source checksum
+     * @param length
+     *            the source length
+     * @param props
+     *            the properties to cache
+     */
+    private static void write(final File cache, final long checksum, final long length,
+            final Map<String, String> props)
+    {
+        int size = HEADER_SIZE + 8;
+        byte[][] keys = new byte[props.size()][];
+        byte[][] values = new byte[props.size()][];
+        int count = 0;
+        for (Map.Entry<String, String> entry : props.entrySet())
+        {
+            keys[count] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            values[count] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            size += 4 + keys[count].length + 4 + values[count].length;
+            count++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum).putLong(length).putInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            buffer.putInt(keys[i].length).put(keys[i]);
+            buffer.putInt(values[i].length).put(values[i]);
+        }
+        buffer.putLong(CRC64.update(0, buffer.array(), HEADER_SIZE, buffer.position() - HEADER_SIZE));
+
+        Path target = cache.toPath();
+        Path temp = null;
+        try
+        {
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            temp = Files.createTempFile(dir, cache.getName(), ".tmp");
+            Files.write(temp, buffer.array());
+            try
+            {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // the cache is optional; next load will just parse the source again
+            if (temp != null)
+                temp.toFile().delete();
+        }
+    }
+
+    /**
+     * Parses the given property file content.
+     * 
+     * @param content
+     *            the file content
+     * 
+     * @return the file properties
+     * 
+     * @throws IOException
+     *             if the content is malformed
+     */
+    private static Map<String, String> parse(final byte[] content) throws IOException
+    {
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(content));
+
+        Map<String, String> map = new HashMap<String, String>();
+        for (String key : props.stringPropertyNames())
+            map.put(key, props.getProperty(key));
+
+        return map;
+    }
+
+    /**
+     * Decodes the next length-prefixed UTF-8 string.
+     * 
+     * @param buffer
+     *            the source buffer
+     * 
+     * @return the string
+     */
+    private static String decode(final ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
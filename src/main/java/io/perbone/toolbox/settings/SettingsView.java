@@ -0,0 +1,297 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A live view over the {@link Settings} keys sharing a common prefix.
+ * <p>
+ * Keys are given relative to the view prefix, so for a view over {@code "db.primary."} the key
+ * {@code "pool.max"} refers to {@code "db.primary.pool.max"}. The view holds no copy of the values
+ * and always reflects the current state of its settings object.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class SettingsView
+{
+    private final Settings settings;
+
+    private final String prefix;
+
+    SettingsView(final Settings settings, final String prefix)
+    {
+        this.settings = settings;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns the prefix of this view.
+     * 
+     * @return the prefix
+     */
+    public String prefix()
+    {
+        return prefix;
+    }
+
+    /**
+     * Returns the settings object this view is bound to.
+     * 
+     * @return the settings object
+     */
+    public Settings settings()
+    {
+        return settings;
+    }
+
+    /**
+     * Returns a nested view for the given relative prefix.
+     * 
+     * @param prefix
+     *            the relative prefix
+     * 
+     * @return the nested view
+     * 
+     * @throws IllegalArgumentException
+     *             if the prefix is invalid
+     */
+    public SettingsView view(final String prefix) throws IllegalArgumentException
+    {
+        if (prefix == null)
+            throw new IllegalArgumentException("Invalid prefix");
+
+        return new SettingsView(settings, this.prefix + prefix);
+    }
+
+    /**
+     * Returns the relative keys currently under this view prefix, in ascending order.
+     * 
+     * @return the set of keys
+     */
+    public Set<String> keys()
+    {
+        return settings.keys(prefix, true);
+    }
+
+    /**
+     * Returns a copy of the relative keys and their values currently under this view prefix.
+     * 
+     * @return the map of properties
+     */
+    public Map<String, String> toMap()
+    {
+        return settings.toMap(prefix, true);
+    }
+
+    /**
+     * Tells whether or not there is any key under this view prefix.
+     * 
+     * @return <tt>true</tt> if it is empty; <tt>false</tt> otherwise
+     */
+    public boolean isEmpty()
+    {
+        return keys().isEmpty();
+    }
+
+    /**
+     * Injects the properties under this view prefix into the given injectee.
+     * 
+     * @param injectee
+     *            the point of injection
+     * 
+     * @return the injectee object
+     * 
+     * @see Settings#inject(Object, String)
+     */
+    public <T> T inject(final T injectee) throws IllegalArgumentException, IllegalStateException
+    {
+        return settings.inject(injectee, prefix);
+    }
+
+    /**
+     * Returns the specified relative key value as a string object.
+     * 
+     * @see Settings#getString(String)
+     */
+    public String getString(final String key)
+    {
+        return settings.getString(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a string object.
+     * 
+     * @see Settings#getString(String, String)
+     */
+    public String getString(final String key, final String value)
+    {
+        return settings.getString(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as an integer object.
+     * 
+     * @see Settings#getInteger(String)
+     */
+    public Integer getInteger(final String key) throws IllegalStateException
+    {
+        return settings.getInteger(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as an integer object.
+     * 
+     * @see Settings#getInteger(String, Integer)
+     */
+    public Integer getInteger(final String key, final Integer value)
+    {
+        return settings.getInteger(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as a long object.
+     * 
+     * @see Settings#getLong(String)
+     */
+    public Long getLong(final String key) throws IllegalStateException
+    {
+        return settings.getLong(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a long object.
+     * 
+     * @see Settings#getLong(String, Long)
+     */
+    public Long getLong(final String key, final Long value)
+    {
+        return settings.getLong(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as a boolean object.
+     * 
+     * @see Settings#getBoolean(String)
+     */
+    public Boolean getBoolean(final String key) throws IllegalStateException
+    {
+        return settings.getBoolean(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a boolean object.
+     * 
+     * @see Settings#getBoolean(String, Boolean)
+     */
+    public Boolean getBoolean(final String key, final Boolean value)
+    {
+        return settings.getBoolean(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as a double object.
+     * 
+     * @see Settings#getDouble(String)
+     */
+    public Double getDouble(final String key) throws IllegalStateException
+    {
+        return settings.getDouble(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a double object.
+     * 
+     * @see Settings#getDouble(String, Double)
+     */
+    public Double getDouble(final String key, final Double value)
+    {
+        return settings.getDouble(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as a duration object.
+     * 
+     * @see Settings#getDuration(String)
+     */
+    public Duration getDuration(final String key) throws IllegalStateException
+    {
+        return settings.getDuration(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a duration object.
+     * 
+     * @see Settings#getDuration(String, Duration)
+     */
+    public Duration getDuration(final String key, final Duration value)
+    {
+        return settings.getDuration(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as a number of bytes.
+     * 
+     * @see Settings#getSize(String)
+     */
+    public Long getSize(final String key) throws IllegalStateException
+    {
+        return settings.getSize(prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as a number of bytes.
+     * 
+     * @see Settings#getSize(String, Long)
+     */
+    public Long getSize(final String key, final Long value)
+    {
+        return settings.getSize(prefix + key, value);
+    }
+
+    /**
+     * Returns the specified relative key value as an enumeration object.
+     * 
+     * @see Settings#getEnum(Class, String)
+     */
+    public Enum<?> getEnum(final Class<?> type, final String key) throws IllegalArgumentException, IllegalStateException
+    {
+        return settings.getEnum(type, prefix + key);
+    }
+
+    /**
+     * Returns the specified relative key value as an enumeration object.
+     * 
+     * @see Settings#getEnum(Class, String, Enum)
+     */
+    public Enum<?> getEnum(final Class<?> type, final String key, final Enum<?> value)
+    {
+        return settings.getEnum(type, prefix + key, value);
+    }
+
+    @Override
+    public String toString()
+    {
+        return prefix + toMap();
+    }
+}
\ No newline at end of file
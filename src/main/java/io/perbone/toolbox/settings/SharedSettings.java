@@ -0,0 +1,427 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.perbone.toolbox.hash.CRC64;
+
+/**
+ * Resolved settings shared by processes on the same host through a memory-mapped file.
+ * <p>
+ * One process {@link #publish(Settings) publishes} its resolved key/value table and any number of
+ * processes mapping the same file read it back. Publication follows the seqlock protocol: the
+ * version word is odd while a table is being written and becomes even again once it is complete,
+ * so readers never take a lock. A reader checks the version word, copies the table and checks the
+ * version word again, retrying when a publication was in progress. Since the Java memory model
+ * says nothing about ordering over mapped memory, the table also carries a CRC64 checksum that
+ * rejects any torn copy.
+ * <p>
+ * Checking for a new version costs a single 8 bytes read of the mapped file; the table is copied
+ * and decoded only when the version has changed, and the decoded table is reused until then.
+ * Concurrent publishers, in this or other processes, are serialized by a file lock.
+ * <p>
+ * A publisher dying halfway leaves the version word odd. Readers then keep serving the last table
+ * they decoded, logging the stuck version once, and the next publication moves past it.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class SharedSettings implements Closeable
+{
+    private static final int MAGIC = 0x54425353; // TBSS
+
+    private static final int LAYOUT = 1;
+
+    private static final int VERSION_OFFSET = 8;
+
+    private static final int LENGTH_OFFSET = 16;
+
+    private static final int CHECKSUM_OFFSET = 24;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int MAX_READ_ATTEMPTS = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedSettings.class);
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    /** The last decoded table and its version; replaced as a whole */
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.<String, String> emptyMap());
+
+    /** The version word no consistent table could be read for; the snapshot is served instead */
+    private volatile long stale = 0;
+
+    /** The version last loaded by {@link #refresh}; guarded by this */
+    private long refreshed = 0;
+
+    /**
+     * An immutable decoded table.
+     */
+    private static final class Snapshot
+    {
+        final long version;
+
+        final Map<String, String> table;
+
+        Snapshot(final long version, final Map<String, String> table)
+        {
+            this.version = version;
+            this.table = table;
+        }
+    }
+
+    /**
+     * Maps the given shared file, creating it when it does not exist.
+     * <p>
+     * All processes sharing the file should use the same capacity; an existing file larger than
+     * the requested capacity is mapped as a whole.
+     * 
+     * @param path
+     *            the shared file path
+     * @param capacity
+     *            the maximum size, in bytes, of an encoded table
+     * 
+     * @throws IllegalArgumentException
+     *             if either the path or the capacity is invalid
+     * @throws BackingStoreException
+     *             if the file cannot be mapped or is not a shared settings file
+     */
+    public SharedSettings(final String path, final int capacity)
+            throws IllegalArgumentException, BackingStoreException
+    {
+        if (path == null)
+            throw new IllegalArgumentException("Invalid path");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity; must be positive");
+
+        this.file = new File(path);
+
+        FileChannel fc = null;
+        try
+        {
+            fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+
+            try (FileLock lock = fc.lock())
+            {
+                long size = Math.max(fc.size(), (long) HEADER_SIZE + capacity);
+                buffer = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+                int magic = buffer.getInt(0);
+                if (magic == 0)
+                    buffer.putInt(4, LAYOUT).putInt(0, MAGIC);
+                else if (magic != MAGIC || buffer.getInt(4) != LAYOUT)
+                    throw new BackingStoreException(String.format("Not a shared settings file [%s]", path));
+            }
+
+            channel = fc;
+        }
+        catch (IOException e)
+        {
+            close(fc);
+            throw new BackingStoreException(String.format("Could not map [%s]", path), e);
+        }
+        catch (BackingStoreException e)
+        {
+            close(fc);
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes the current resolved table of the given settings object.
+     * 
+     * @param settings
+     *            the settings to publish
+     * 
+     * @return the new version
+     * 
+     * @throws IllegalArgumentException
+     *             if the settings object is invalid
+     * @throws BackingStoreException
+     *             if the table does not fit into the shared file or it cannot be locked
+     */
+    public long publish(final Settings settings) throws IllegalArgumentException, BackingStoreException
+    {
+        if (settings == null)
+            throw new IllegalArgumentException("Invalid settings");
+
+        return publish(settings.toMap());
+    }
+
+    /**
+     * Publishes the given key/value table.
+     * <p>
+     * A version left odd by a publisher that died halfway is skipped, so readers take the new
+     * table.
+     * 
+     * @param props
+     *            the table to publish
+     * 
+     * @return the new version
+     * 
+     * @throws IllegalArgumentException
+     *             if the table is invalid
+     * @throws BackingStoreException
+     *             if the table does not fit into the shared file or it cannot be locked
+     */
+    public long publish(final Map<String, String> props) throws IllegalArgumentException, BackingStoreException
+    {
+        if (props == null)
+            throw new IllegalArgumentException("Invalid properties");
+
+        byte[] payload = encode(props);
+        if (payload.length > buffer.capacity() - HEADER_SIZE)
+            throw new BackingStoreException(String.format("Settings table of %d bytes exceeds the capacity of [%s]",
+                    payload.length, file));
+
+        synchronized (this)
+        {
+            try (FileLock lock = channel.lock())
+            {
+                long version = buffer.getLong(VERSION_OFFSET);
+                if ((version & 1) != 0)
+                {
+                    logger.warn("Recovering the shared settings [{}] from the unfinished version {}", file, version);
+                    version++; // a publisher died halfway; its table is garbage anyway
+                }
+
+                buffer.putLong(VERSION_OFFSET, version + 1);
+
+                ByteBuffer target = buffer.duplicate();
+                target.position(HEADER_SIZE);
+                target.put(payload);
+                buffer.putInt(LENGTH_OFFSET, payload.length);
+                buffer.putLong(CHECKSUM_OFFSET, CRC64.checksum(payload));
+
+                buffer.putLong(VERSION_OFFSET, version + 2);
+
+                return version + 2;
+            }
+            catch (IOException e)
+            {
+                throw new BackingStoreException(String.format("Could not lock [%s]", file), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the latest published table.
+     * <p>
+     * It's a single read of the mapped version word; an odd value means a publication is in
+     * progress and zero means nothing was published yet.
+     * 
+     * @return the current version
+     */
+    public long version()
+    {
+        return buffer.getLong(VERSION_OFFSET);
+    }
+
+    /**
+     * Returns the latest published table.
+     * <p>
+     * The table is copied and decoded only when its version has changed since the last call. When
+     * no consistent copy can be taken, as when a publisher died halfway, the last table read is
+     * returned; it's empty if none was read yet.
+     * 
+     * @return an immutable key/value table
+     */
+    public Map<String, String> snapshot()
+    {
+        return current().table;
+    }
+
+    /**
+     * Loads the latest published table into the given layer of the given settings object whenever
+     * it has changed since the last refresh.
+     * 
+     * @param settings
+     *            the target settings
+     * @param layer
+     *            the target layer name
+     * @param precedence
+     *            the target layer precedence
+     * 
+     * @return <tt>true</tt> if the layer was updated; <tt>false</tt> otherwise
+     * 
+     * @throws IllegalArgumentException
+     *             if either the settings object or the layer name is invalid
+     */
+    public synchronized boolean refresh(final Settings settings, final String layer, final int precedence)
+            throws IllegalArgumentException
+    {
+        if (settings == null)
+            throw new IllegalArgumentException("Invalid settings");
+
+        Snapshot s = current();
+        if (s.version == refreshed)
+            return false;
+
+        settings.layer(layer, precedence, s.table);
+        refreshed = s.version;
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Returns the latest published snapshot, decoding it only if its version has changed.
+     * 
+     * @return the current snapshot, or the last one if no consistent copy can be taken
+     */
+    private Snapshot current()
+    {
+        Snapshot s = snapshot;
+
+        long before = 0;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++)
+        {
+            before = buffer.getLong(VERSION_OFFSET);
+            if (before == s.version || before == stale)
+                return s;
+
+            if ((before & 1) == 0)
+            {
+                int length = buffer.getInt(LENGTH_OFFSET);
+                long checksum = buffer.getLong(CHECKSUM_OFFSET);
+
+                if (length >= 0 && length <= buffer.capacity() - HEADER_SIZE)
+                {
+                    byte[] payload = new byte[length];
+                    ByteBuffer source = buffer.duplicate();
+                    source.position(HEADER_SIZE);
+                    source.get(payload);
+
+                    if (buffer.getLong(VERSION_OFFSET) == before && CRC64.checksum(payload) == checksum)
+                    {
+                        s = new Snapshot(before, decode(payload));
+                        snapshot = s;
+                        return s;
+                    }
+                }
+            }
+
+            Thread.yield();
+        }
+
+        // most likely a publisher died halfway; spinning again on every read would not help
+        logger.warn("Could not read a consistent settings table from [{}] at version {}; serving version {}", file,
+                before, s.version);
+        stale = before;
+
+        return s;
+    }
+
+    /**
+     * Encodes the given table as a count followed by length-prefixed UTF-8 keys and values.
+     */
+    private static byte[] encode(final Map<String, String> props)
+    {
+        byte[][] keys = new byte[props.size()][];
+        byte[][] values = new byte[props.size()][];
+        int size = 4;
+        int count = 0;
+        for (Map.Entry<String, String> entry : props.entrySet())
+        {
+            keys[count] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            values[count] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            size += 4 + keys[count].length + 4 + values[count].length;
+            count++;
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        bb.putInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            bb.putInt(keys[i].length).put(keys[i]);
+            bb.putInt(values[i].length).put(values[i]);
+        }
+
+        return bb.array();
+    }
+
+    /**
+     * Decodes a table previously encoded by {@link #encode(Map)}.
+     */
+    private static Map<String, String> decode(final byte[] payload)
+    {
+        if (payload.length == 0)
+            return Collections.emptyMap();
+
+        ByteBuffer bb = ByteBuffer.wrap(payload);
+        int count = bb.getInt();
+
+        Map<String, String> table = new HashMap<String, String>(Math.max(16, (int) (count / 0.75f) + 1));
+        for (int i = 0; i < count; i++)
+        {
+            byte[] key = new byte[bb.getInt()];
+            bb.get(key);
+            byte[] value = new byte[bb.getInt()];
+            bb.get(value);
+            table.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+        }
+
+        return Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Closes the given channel quietly.
+     */
+    private static void close(final FileChannel fc)
+    {
+        if (fc == null)
+            return;
+
+        try
+        {
+            fc.close();
+        }
+        catch (IOException e)
+        {
+            // do nothing
+        }
+    }
+}
\ No newline at end of file
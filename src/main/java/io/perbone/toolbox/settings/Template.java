@@ -0,0 +1,173 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A property value compiled into a list of literal and reference segments.
+ * <p>
+ * References take the form <code>${name}</code> or <code>${name:default}</code>. A reference that
+ * cannot be resolved and has no default value is kept verbatim into the rendered value.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class Template
+{
+    /**
+     * Resolves the value of a reference.
+     */
+    interface Resolver
+    {
+        /**
+         * Returns the value of the given reference name.
+         * 
+         * @param name
+         *            the reference name
+         * 
+         * @return the reference value or {@code null} if it cannot be resolved
+         */
+        String resolve(String name);
+    }
+
+    private static final String PREFIX = "${";
+
+    private static final char SUFFIX = '}';
+
+    private static final char DEFAULT_SEPARATOR = ':';
+
+    /** Literal segments; there is always one more literal than references */
+    private final String[] literals;
+
+    /** Reference names */
+    private final String[] names;
+
+    /** Reference default values; {@code null} when absent */
+    private final String[] defaults;
+
+    /** The distinct reference names */
+    private final Set<String> references;
+
+    private Template(final List<String> literals, final List<String> names, final List<String> defaults)
+    {
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.names = names.toArray(new String[names.size()]);
+        this.defaults = defaults.toArray(new String[defaults.size()]);
+        this.references = Collections.unmodifiableSet(new LinkedHashSet<String>(names));
+    }
+
+    /**
+     * Compiles the given value.
+     * 
+     * @param value
+     *            the raw property value
+     * 
+     * @return the compiled template or {@code null} if the value has no references at all
+     */
+    static Template compile(final String value)
+    {
+        if (value == null || value.indexOf(PREFIX) < 0)
+            return null;
+
+        List<String> literals = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<String> defaults = new ArrayList<String>();
+
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < value.length())
+        {
+            int start = value.indexOf(PREFIX, i);
+            int end = start < 0 ? -1 : value.indexOf(SUFFIX, start + PREFIX.length());
+            if (end < 0)
+            {
+                literal.append(value, i, value.length());
+                break;
+            }
+
+            literal.append(value, i, start);
+
+            String expression = value.substring(start + PREFIX.length(), end);
+            int separator = expression.indexOf(DEFAULT_SEPARATOR);
+            String name = separator < 0 ? expression : expression.substring(0, separator);
+            if (name.isEmpty())
+            {
+                /* Not a reference; keep it as literal */
+                literal.append(value, start, end + 1);
+            }
+            else
+            {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                names.add(name);
+                defaults.add(separator < 0 ? null : expression.substring(separator + 1));
+            }
+
+            i = end + 1;
+        }
+        literals.add(literal.toString());
+
+        return names.isEmpty() ? null : new Template(literals, names, defaults);
+    }
+
+    /**
+     * Returns the distinct reference names of this template.
+     * 
+     * @return the set of names
+     */
+    Set<String> references()
+    {
+        return references;
+    }
+
+    /**
+     * Renders this template.
+     * 
+     * @param resolver
+     *            the reference resolver
+     * 
+     * @return the rendered value
+     */
+    String render(final Resolver resolver)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++)
+        {
+            sb.append(literals[i]);
+
+            String value = resolver.resolve(names[i]);
+            if (value == null)
+                value = defaults[i];
+
+            if (value != null)
+                sb.append(value);
+            else
+                sb.append(PREFIX).append(names[i]).append(SUFFIX);
+        }
+        sb.append(literals[names.length]);
+
+        return sb.toString();
+    }
+}
\ No newline at end of file
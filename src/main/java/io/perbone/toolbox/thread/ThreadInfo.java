@@ -22,6 +22,8 @@ package io.perbone.toolbox.thread;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import io.perbone.toolbox.time.Deadline;
+
 /**
  * Thread Info helper class.
  * 
@@ -50,6 +52,17 @@ public final class ThreadInfo
         return tinfo;
     }
 
+    /**
+     * Returns the current {@link ThreadInfo} object bound to the caller thread without creating
+     * one, for readers that must not leave an object behind.
+     * 
+     * @return the current object; null if there is none
+     */
+    public static ThreadInfo peek()
+    {
+        return requests.get(Thread.currentThread().getId());
+    }
+
     /**
      * Resets the current {@link ThreadInfo} object bound to the caller thread with a new one.
      * 
@@ -72,6 +85,8 @@ public final class ThreadInfo
 
     private final Map<Object, Object> map = new ConcurrentHashMap<Object, Object>();
 
+    private volatile Deadline deadline;
+
     private ThreadInfo()
     {
     }
@@ -119,6 +134,35 @@ public final class ThreadInfo
         return map.remove(key);
     }
 
+    /**
+     * Returns the deadline of the work this thread is doing.
+     * 
+     * @return the deadline; null if there is none
+     * 
+     * @see Deadline#current()
+     */
+    public Deadline getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline of the work this thread is doing.
+     * <p>
+     * Prefer {@link Deadline#bind()}, which never extends an earlier deadline and restores the
+     * previous one when done.
+     * 
+     * @param deadline
+     *            the deadline; null to remove it
+     * 
+     * @return this object
+     */
+    public ThreadInfo setDeadline(final Deadline deadline)
+    {
+        this.deadline = deadline;
+        return this;
+    }
+
     /**
      * Removes all of properties from this {@link ThreadInfo} object.
      * 
@@ -127,6 +171,7 @@ public final class ThreadInfo
     public ThreadInfo clear()
     {
         map.clear();
+        deadline = null;
         return this;
     }
 }
\ No newline at end of file
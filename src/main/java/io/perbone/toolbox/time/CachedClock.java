@@ -0,0 +1,148 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coarse clock reading a cached time refreshed by a background thread.
+ * <p>
+ * Reading it is a single volatile load, cheaper than querying the system timer, at the price of
+ * being up to one resolution period behind. It suits hot paths where many timeouts are computed
+ * and a millisecond or so of error does not matter.
+ * <p>
+ * The refresh thread is a daemon; {@link #close()} stops it, after which the time stays still.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class CachedClock implements MonotonicClock, AutoCloseable
+{
+    private final MonotonicClock source;
+
+    private final long resolution;
+
+    private final Thread ticker;
+
+    private volatile long time;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a clock caching the system clock with the given resolution.
+     * 
+     * @param resolution
+     *            the refresh period
+     * @param unit
+     *            the time unit of the resolution
+     * 
+     * @throws IllegalArgumentException
+     *             if the resolution is not positive or the unit is invalid
+     */
+    public CachedClock(final long resolution, final TimeUnit unit) throws IllegalArgumentException
+    {
+        this(MonotonicClock.SYSTEM, resolution, unit);
+    }
+
+    /**
+     * Creates a clock caching the given clock with the given resolution.
+     * 
+     * @param source
+     *            the clock to read from
+     * @param resolution
+     *            the refresh period
+     * @param unit
+     *            the time unit of the resolution
+     * 
+     * @throws IllegalArgumentException
+     *             if the source is invalid, the resolution is not positive or the unit is invalid
+     */
+    public CachedClock(final MonotonicClock source, final long resolution, final TimeUnit unit)
+            throws IllegalArgumentException
+    {
+        if (source == null)
+            throw new IllegalArgumentException("Invalid source clock");
+        if (resolution <= 0)
+            throw new IllegalArgumentException("Invalid resolution");
+        if (unit == null)
+            throw new IllegalArgumentException("Invalid time unit");
+
+        this.source = source;
+        this.resolution = unit.toNanos(resolution);
+        this.time = source.nanoTime();
+
+        this.ticker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        }, "toolbox-cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long nanoTime()
+    {
+        return time;
+    }
+
+    /**
+     * Returns the refresh period.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the resolution in the given unit
+     */
+    public long getResolution(final TimeUnit unit)
+    {
+        return unit.convert(resolution, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops refreshing the time.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        ticker.interrupt();
+    }
+
+    private void tick()
+    {
+        while (!closed)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(resolution);
+            }
+            catch (InterruptedException e)
+            {
+                continue; // closed or spurious; the loop condition decides
+            }
+
+            time = source.nanoTime();
+        }
+    }
+}
\ No newline at end of file
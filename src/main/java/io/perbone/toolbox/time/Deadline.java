@@ -0,0 +1,225 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+
+import io.perbone.toolbox.thread.ThreadInfo;
+
+/**
+ * A point in time by which some work must be done, on a {@link MonotonicClock}.
+ * <p>
+ * A deadline is set once by whoever knows the time budget, typically where a request enters,
+ * and bound to the thread {@link ThreadInfo} so the code deeper in the call stack can read it
+ * with {@link #current()}: waits are capped at the time left instead of their own fixed timeouts,
+ * and work is abandoned early once the budget is spent.
+ * 
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(2, TimeUnit.SECONDS).bind())
+ * {
+ *     ...
+ * }
+ * </pre>
+ * 
+ * Binding never extends the budget: inside an outer scope the earlier of both deadlines wins.
+ * Deadlines are immutable.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class Deadline implements Comparable<Deadline>
+{
+    /** The longest timeout; about 146 years, far enough to mean no deadline at all */
+    private static final long MAX_TIMEOUT = Long.MAX_VALUE >> 1;
+
+    /**
+     * The binding of a deadline to the current thread; closing it restores the previous one.
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final ThreadInfo info;
+
+        private final Deadline previous;
+
+        private Scope(final ThreadInfo info, final Deadline previous)
+        {
+            this.info = info;
+            this.previous = previous;
+        }
+
+        /**
+         * Restores the deadline bound before this scope.
+         */
+        @Override
+        public void close()
+        {
+            info.setDeadline(previous);
+        }
+    }
+
+    private final MonotonicClock clock;
+
+    private final long time;
+
+    private Deadline(final MonotonicClock clock, final long time)
+    {
+        this.clock = clock;
+        this.time = time;
+    }
+
+    /**
+     * Creates a deadline the given time from now on the system monotonic clock.
+     * 
+     * @param timeout
+     *            the time budget; not positive values give an expired deadline
+     * @param unit
+     *            the time unit of the timeout
+     * 
+     * @return the deadline
+     * 
+     * @throws IllegalArgumentException
+     *             if the unit is invalid
+     */
+    public static Deadline after(final long timeout, final TimeUnit unit) throws IllegalArgumentException
+    {
+        return after(timeout, unit, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a deadline the given time from now on the given clock.
+     * 
+     * @param timeout
+     *            the time budget; not positive values give an expired deadline
+     * @param unit
+     *            the time unit of the timeout
+     * @param clock
+     *            the clock
+     * 
+     * @return the deadline
+     * 
+     * @throws IllegalArgumentException
+     *             if the unit or the clock is invalid
+     */
+    public static Deadline after(final long timeout, final TimeUnit unit, final MonotonicClock clock)
+            throws IllegalArgumentException
+    {
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        long nanos = Math.max(Math.min(unit.toNanos(timeout), MAX_TIMEOUT), 0);
+        return new Deadline(clock, clock.nanoTime() + nanos);
+    }
+
+    /**
+     * Returns the deadline bound to the current thread.
+     * <p>
+     * A thread without {@link ThreadInfo} is not given one, so checking costs nothing to threads
+     * that never bind a deadline.
+     * 
+     * @return the deadline or <tt>null</tt> if there is none
+     */
+    public static Deadline current()
+    {
+        ThreadInfo info = ThreadInfo.peek();
+        return info == null ? null : info.getDeadline();
+    }
+
+    /**
+     * Binds this deadline to the current thread, unless one bound before expires earlier.
+     * 
+     * @return the scope to close when the work is done
+     */
+    public Scope bind()
+    {
+        ThreadInfo info = ThreadInfo.current();
+        Deadline previous = info.getDeadline();
+        info.setDeadline(min(previous));
+
+        return new Scope(info, previous);
+    }
+
+    /**
+     * Returns the time left before this deadline.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the time left, zero or negative once expired
+     */
+    public long timeRemaining(final TimeUnit unit)
+    {
+        return unit.convert(time - clock.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Tells whether this deadline has passed.
+     * 
+     * @return {@code true} if expired; {@code false} otherwise
+     */
+    public boolean isExpired()
+    {
+        return time - clock.nanoTime() <= 0;
+    }
+
+    /**
+     * Caps the given timeout at the time left before this deadline.
+     * 
+     * @param timeout
+     *            the timeout
+     * @param unit
+     *            the time unit of both the timeout and the result
+     * 
+     * @return the smaller of the timeout and the time left, never negative
+     */
+    public long cap(final long timeout, final TimeUnit unit)
+    {
+        return Math.max(Math.min(timeout, timeRemaining(unit)), 0);
+    }
+
+    /**
+     * Returns the earlier of this deadline and the given one.
+     * 
+     * @param other
+     *            the other deadline; may be <tt>null</tt>
+     * 
+     * @return the earlier deadline
+     */
+    public Deadline min(final Deadline other)
+    {
+        return other == null || compareTo(other) <= 0 ? this : other;
+    }
+
+    @Override
+    public int compareTo(final Deadline other)
+    {
+        long diff = other.clock == clock ? time - other.time
+                : timeRemaining(TimeUnit.NANOSECONDS) - other.timeRemaining(TimeUnit.NANOSECONDS);
+
+        return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Deadline[%+.3fms]", timeRemaining(TimeUnit.MICROSECONDS) / 1000.0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,787 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.perbone.toolbox.hash.CRC64;
+
+/**
+ * A timer queue whose timers survive a restart, kept in a memory-mapped journal.
+ * <p>
+ * Every timer added, cancelled or handled appends a record to the journal, and opening the
+ * journal again replays it to rebuild the pending timers. Timers carry an opaque payload rather
+ * than a context object, and their deadlines are kept as wall clock time, so a timer that came due
+ * while the process was down expires on the first drain after the restart.
+ * <p>
+ * Records go to the mapped memory only, which costs no system call; a background thread forces
+ * them to the storage device once per sync interval, and {@link #sync()} does it on demand. A
+ * crash thus loses at most the changes of the last interval. Each record ends with a CRC64
+ * checksum, so a record torn by a crash ends the replay instead of being read back as garbage.
+ * <p>
+ * Cancelled and handled timers leave dead records behind. When those outweigh the pending timers,
+ * or when the journal is full, the pending timers are written to a new journal that atomically
+ * replaces the old one, and grows it if needed.
+ * <p>
+ * Expired timers are handed out by {@link #drainExpired(Consumer)} and recorded as handled only
+ * after the consumer returns, so a timer is never lost, though one handled just before a crash may
+ * be handed out again after the restart. All methods are thread-safe; a journal is owned by a
+ * single queue, which holds a file lock on it.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class DurableTimerQueue implements Closeable
+{
+    /** The default initial journal size, in bytes */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /** The default sync interval, in milliseconds */
+    public static final long DEFAULT_SYNC_INTERVAL = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(DurableTimerQueue.class);
+
+    private static final int MAGIC = 0x5442544A; // TBTJ
+
+    private static final int LAYOUT = 1;
+
+    /** The next timer id, so ids are never reused even once compaction dropped their records */
+    private static final int NEXT_ID_OFFSET = 8;
+
+    private static final int HEADER_SIZE = 16;
+
+    /** Zeroes used to clear the journal tail */
+    private static final byte[] ZEROS = new byte[8192];
+
+    private static final byte ADD = 1;
+
+    private static final byte REMOVE = 2;
+
+    /** Record length, type, timer id and deadline */
+    private static final int RECORD_HEADER = 21;
+
+    /** Record header and trailing checksum */
+    private static final int RECORD_OVERHEAD = RECORD_HEADER + 8;
+
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    /**
+     * A durable timer.
+     */
+    public final class Timer implements TimerHandle
+    {
+        private final long id;
+
+        private final long deadline;
+
+        private final byte[] payload;
+
+        /** The size of the add record */
+        private final int size;
+
+        private TimerHandle handle;
+
+        private Timer(final long id, final long deadline, final byte[] payload)
+        {
+            this.id = id;
+            this.deadline = deadline;
+            this.payload = payload;
+            this.size = RECORD_OVERHEAD + payload.length;
+        }
+
+        /**
+         * Returns the timer identifier, unique within the journal.
+         * 
+         * @return the identifier
+         */
+        public long getId()
+        {
+            return id;
+        }
+
+        /**
+         * Returns the wall clock time when the timer expires.
+         * 
+         * @return the deadline in milliseconds since the epoch
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        /**
+         * Returns the timer payload.
+         * 
+         * @return a copy of the payload
+         */
+        public byte[] getPayload()
+        {
+            return payload.clone();
+        }
+
+        /**
+         * Cancels the timer, recording it in the journal.
+         * 
+         * @throws IllegalStateException
+         *             if the queue is closed
+         * @throws UncheckedIOException
+         *             if the journal cannot be compacted to make room
+         */
+        @Override
+        public boolean cancel() throws IllegalStateException, UncheckedIOException
+        {
+            synchronized (DurableTimerQueue.this)
+            {
+                checkOpen();
+                return remove(this);
+            }
+        }
+
+        @Override
+        public boolean isPending()
+        {
+            synchronized (DurableTimerQueue.this)
+            {
+                return timers.containsKey(id);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Timer[id=%d, deadline=%d]", id, deadline);
+        }
+    }
+
+    private final File file;
+
+    private final int capacity;
+
+    private final long syncInterval;
+
+    private final TimerQueue queue = new TimerQueue();
+
+    /** The pending timers by id, in the order they were added */
+    private final Map<Long, Timer> timers = new LinkedHashMap<Long, Timer>();
+
+    private final Thread syncer;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /** The end of the journal */
+    private int position;
+
+    /** The size of the add records of the pending timers */
+    private long liveBytes;
+
+    private long nextId = 1;
+
+    private boolean dirty;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the given journal with the default capacity and sync interval, creating it when it
+     * does not exist.
+     * 
+     * @param path
+     *            the journal file path
+     * 
+     * @throws IllegalArgumentException
+     *             if the path is invalid
+     * @throws IOException
+     *             if the journal cannot be mapped, is in use or is not a timer journal
+     */
+    public DurableTimerQueue(final String path) throws IllegalArgumentException, IOException
+    {
+        this(path, DEFAULT_CAPACITY, DEFAULT_SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the given journal, creating it when it does not exist, and replays it.
+     * 
+     * @param path
+     *            the journal file path
+     * @param capacity
+     *            the initial journal size, in bytes; an existing larger journal is mapped as a
+     *            whole
+     * @param syncInterval
+     *            the longest time a change stays in memory only
+     * @param unit
+     *            the time unit of the sync interval
+     * 
+     * @throws IllegalArgumentException
+     *             if any of the arguments is invalid
+     * @throws IOException
+     *             if the journal cannot be mapped, is in use or is not a timer journal
+     */
+    public DurableTimerQueue(final String path, final int capacity, final long syncInterval, final TimeUnit unit)
+            throws IllegalArgumentException, IOException
+    {
+        if (path == null)
+            throw new IllegalArgumentException("Invalid path");
+        if (capacity <= HEADER_SIZE)
+            throw new IllegalArgumentException("Invalid capacity");
+        if (syncInterval <= 0)
+            throw new IllegalArgumentException("Invalid sync interval");
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        this.file = new File(path);
+        this.capacity = capacity;
+        this.syncInterval = unit.toNanos(syncInterval);
+
+        open();
+        replay();
+
+        this.syncer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                syncLoop();
+            }
+        }, "toolbox-timer-journal");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Adds a timer to the queue.
+     * 
+     * @param delay
+     *            The time delay from now when to expire the timer
+     * @param unit
+     *            The time unit for the delay value
+     * @param payload
+     *            The data to be passed back at expire time; may be <tt>null</tt>
+     * 
+     * @return the timer
+     * 
+     * @throws IllegalArgumentException
+     *             if the delay is negative or the unit is invalid
+     * @throws IllegalStateException
+     *             if the queue is closed
+     * @throws UncheckedIOException
+     *             if the journal cannot be compacted to make room
+     */
+    public synchronized Timer add(final long delay, final TimeUnit unit, final byte[] payload)
+            throws IllegalArgumentException, IllegalStateException, UncheckedIOException
+    {
+        if (delay < 0)
+            throw new IllegalArgumentException("Cannot add an expired time to the queue");
+        else if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        checkOpen();
+
+        long nanos = unit.toNanos(delay);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (TimeUnit.MILLISECONDS.toNanos(millis) < nanos)
+            millis++;
+
+        long now = System.currentTimeMillis();
+        Timer t = new Timer(nextId, now + Math.min(millis, Long.MAX_VALUE - now),
+                payload == null ? NO_PAYLOAD : payload.clone());
+
+        append(ADD, t.id, t.deadline, t.payload);
+        buffer.putLong(NEXT_ID_OFFSET, ++nextId);
+        schedule(t, nanos);
+
+        return t;
+    }
+
+    /**
+     * Returns the pending timers, including the ones rebuilt from the journal.
+     * 
+     * @return the timers in the order they were added
+     */
+    public synchronized List<Timer> getTimers()
+    {
+        return new ArrayList<Timer>(timers.values());
+    }
+
+    /**
+     * Returns the number of pending timers.
+     * 
+     * @return the number of timers
+     */
+    public synchronized int size()
+    {
+        return timers.size();
+    }
+
+    /**
+     * Returns the delay until the first timer expires.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the delay, rounded up; zero if a timer has already expired or
+     *         {@link TimerQueue#NO_TIMER} if there is none
+     * 
+     * @throws IllegalArgumentException
+     *             if the unit is invalid
+     */
+    public synchronized long getFirstDelay(final TimeUnit unit) throws IllegalArgumentException
+    {
+        return queue.getFirstDelay(unit);
+    }
+
+    /**
+     * Hands the expired timers to the given consumer, in expiry time order.
+     * <p>
+     * A timer cancelled while the drain is running, by the consumer or another thread, is not
+     * handed out.
+     * <p>
+     * A timer is recorded as handled once the consumer returns. If the consumer throws, that timer
+     * and the ones not handed out yet stay due, to be handed out again by the next drain. The queue
+     * is not locked while the consumer runs, so it may add or cancel timers itself.
+     * 
+     * @param consumer
+     *            the consumer of the expired timers
+     * 
+     * @return the number of timers handed to the consumer
+     * 
+     * @throws IllegalArgumentException
+     *             if the consumer is invalid
+     * @throws IllegalStateException
+     *             if the queue is closed
+     * @throws UncheckedIOException
+     *             if the journal cannot be compacted to make room
+     */
+    public int drainExpired(final Consumer<Timer> consumer)
+            throws IllegalArgumentException, IllegalStateException, UncheckedIOException
+    {
+        if (consumer == null)
+            throw new IllegalArgumentException("Invalid consumer");
+
+        List<Object> expired;
+        synchronized (this)
+        {
+            checkOpen();
+            expired = queue.getExpiredTimers();
+        }
+
+        int count = 0;
+        for (int i = 0; i < expired.size(); i++)
+        {
+            Timer t = (Timer) expired.get(i);
+            synchronized (this)
+            {
+                if (!timers.containsKey(t.id))
+                    continue; // cancelled meanwhile
+            }
+
+            try
+            {
+                consumer.accept(t);
+            }
+            catch (RuntimeException | Error e)
+            {
+                synchronized (this)
+                {
+                    for (int j = i; j < expired.size(); j++)
+                    {
+                        Timer r = (Timer) expired.get(j);
+                        if (timers.containsKey(r.id))
+                            r.handle = queue.add(0, TimeUnit.NANOSECONDS, r);
+                    }
+                }
+                throw e;
+            }
+
+            synchronized (this)
+            {
+                if (!closed)
+                    remove(t);
+            }
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Forces the journal changes made so far to the storage device.
+     * 
+     * @throws IllegalStateException
+     *             if the queue is closed
+     */
+    public synchronized void sync() throws IllegalStateException
+    {
+        checkOpen();
+
+        if (dirty)
+        {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Rewrites the journal with the pending timers only.
+     * 
+     * @throws IllegalStateException
+     *             if the queue is closed
+     * @throws IOException
+     *             if the new journal cannot be written
+     */
+    public synchronized void compact() throws IllegalStateException, IOException
+    {
+        checkOpen();
+        compact(0);
+    }
+
+    /**
+     * Syncs and closes the journal; pending timers are kept in it for the next queue to rebuild.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed)
+            return;
+
+        closed = true;
+        syncer.interrupt();
+
+        if (dirty)
+            buffer.force();
+        channel.close();
+    }
+
+    private void checkOpen() throws IllegalStateException
+    {
+        if (closed)
+            throw new IllegalStateException(String.format("Timer journal [%s] is closed", file));
+    }
+
+    private void schedule(final Timer t, final long nanos)
+    {
+        t.handle = queue.add(nanos, TimeUnit.NANOSECONDS, t);
+        timers.put(t.id, t);
+        liveBytes += t.size;
+    }
+
+    private boolean remove(final Timer t)
+    {
+        if (timers.remove(t.id) == null)
+            return false;
+
+        t.handle.cancel();
+        liveBytes -= t.size;
+        append(REMOVE, t.id, 0, NO_PAYLOAD);
+
+        return true;
+    }
+
+    /**
+     * Appends a record to the journal, compacting it first when the record does not fit.
+     */
+    private void append(final byte type, final long id, final long deadline, final byte[] payload)
+            throws UncheckedIOException
+    {
+        int length = RECORD_OVERHEAD + payload.length;
+        if (length > buffer.limit() - position)
+        {
+            try
+            {
+                compact(length);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }
+
+        position += write(buffer, position, type, id, deadline, payload);
+        dirty = true;
+    }
+
+    /**
+     * Writes a record at the given position; the length is written last so a torn record reads as
+     * either the end of the journal or a checksum mismatch.
+     * 
+     * @return the record length
+     */
+    private static int write(final ByteBuffer target, final int pos, final byte type, final long id,
+            final long deadline, final byte[] payload)
+    {
+        int length = RECORD_OVERHEAD + payload.length;
+
+        target.put(pos + 4, type);
+        target.putLong(pos + 5, id);
+        target.putLong(pos + 13, deadline);
+        ByteBuffer data = target.duplicate();
+        data.position(pos + RECORD_HEADER);
+        data.put(payload);
+        target.putLong(pos + length - 8, checksum(target, pos + 4, pos + length - 8));
+        target.putInt(pos, length);
+
+        return length;
+    }
+
+    private static long checksum(final ByteBuffer source, final int from, final int to)
+    {
+        ByteBuffer range = source.duplicate();
+        range.limit(to);
+        range.position(from);
+
+        return CRC64.checksum(range);
+    }
+
+    /**
+     * Maps the journal file, creating it when needed, and locks it.
+     */
+    private void open() throws IOException
+    {
+        FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try
+        {
+            lock(fc);
+
+            long size = Math.max(fc.size(), capacity);
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(String.format("Timer journal [%s] is too large", file));
+
+            MappedByteBuffer mb = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            int magic = mb.getInt(0);
+            if (magic == 0)
+                mb.putInt(4, LAYOUT).putInt(0, MAGIC);
+            else if (magic != MAGIC || mb.getInt(4) != LAYOUT)
+                throw new IOException(String.format("Not a timer journal [%s]", file));
+
+            channel = fc;
+            buffer = mb;
+        }
+        catch (IOException e)
+        {
+            close(fc);
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the pending timers from the journal records, up to the first invalid one.
+     */
+    private void replay()
+    {
+        Map<Long, Timer> recovered = new LinkedHashMap<Long, Timer>();
+
+        int pos = HEADER_SIZE;
+        while (pos <= buffer.limit() - RECORD_OVERHEAD)
+        {
+            int length = buffer.getInt(pos);
+            if (length < RECORD_OVERHEAD || length > buffer.limit() - pos)
+                break;
+            if (checksum(buffer, pos + 4, pos + length - 8) != buffer.getLong(pos + length - 8))
+                break;
+
+            byte type = buffer.get(pos + 4);
+            long id = buffer.getLong(pos + 5);
+            if (type == ADD)
+            {
+                byte[] payload = new byte[length - RECORD_OVERHEAD];
+                ByteBuffer data = buffer.duplicate();
+                data.position(pos + RECORD_HEADER);
+                data.get(payload);
+                recovered.put(id, new Timer(id, buffer.getLong(pos + 13), payload));
+            }
+            else if (type == REMOVE)
+                recovered.remove(id);
+            else
+                break;
+
+            nextId = Math.max(nextId, id + 1);
+            pos += length;
+        }
+
+        position = pos;
+        nextId = Math.max(nextId, buffer.getLong(NEXT_ID_OFFSET));
+
+        // whatever follows the last valid record is garbage, even when its first word is zero,
+        // and later appends must never line up with it; since journals are written contiguously
+        // over a zeroed file, it ends at the last non zero byte and the zeros after it are only
+        // read, so a grown journal is not written back whole on every open
+        int end = buffer.limit();
+        while (end - 8 >= pos && buffer.getLong(end - 8) == 0)
+            end -= 8;
+        while (end > pos && buffer.get(end - 1) == 0)
+            end--;
+
+        if (end > pos)
+        {
+            logger.warn("Discarding the torn tail of the timer journal [{}] at offset {}", file, pos);
+
+            ByteBuffer tail = buffer.duplicate();
+            tail.limit(end).position(pos);
+            while (tail.hasRemaining())
+                tail.put(ZEROS, 0, Math.min(ZEROS.length, tail.remaining()));
+            dirty = true;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Timer t : recovered.values())
+            schedule(t, TimeUnit.MILLISECONDS.toNanos(Math.max(t.deadline - now, 0)));
+    }
+
+    /**
+     * Writes the pending timers to a new journal with room for the given number of extra bytes,
+     * then puts it in place of the current one.
+     */
+    private void compact(final int reserve) throws IOException
+    {
+        long needed = HEADER_SIZE + liveBytes + reserve;
+        long size = Math.max(capacity, needed * 2);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(String.format("Timer journal [%s] is full", file));
+
+        File temp = new File(file.getPath() + ".compact");
+        Files.deleteIfExists(temp.toPath());
+
+        FileChannel fc = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try
+        {
+            lock(fc);
+
+            MappedByteBuffer mb = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mb.putLong(NEXT_ID_OFFSET, nextId);
+            mb.putInt(4, LAYOUT).putInt(0, MAGIC);
+
+            int pos = HEADER_SIZE;
+            for (Timer t : timers.values())
+                pos += write(mb, pos, ADD, t.id, t.deadline, t.payload);
+
+            mb.force();
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            close(channel);
+            channel = fc;
+            buffer = mb;
+            position = pos;
+            dirty = false;
+        }
+        catch (IOException e)
+        {
+            close(fc);
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+    }
+
+    private void syncLoop()
+    {
+        while (!closed)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(syncInterval);
+            }
+            catch (InterruptedException e)
+            {
+                continue; // closed or spurious; the loop condition decides
+            }
+
+            synchronized (this)
+            {
+                if (closed)
+                    break;
+
+                try
+                {
+                    long garbage = position - HEADER_SIZE - liveBytes;
+                    if (garbage > liveBytes && garbage > capacity / 4)
+                        compact(0);
+                    else if (dirty)
+                    {
+                        buffer.force();
+                        dirty = false;
+                    }
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    logger.warn("Could not sync the timer journal [{}]", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks the given journal channel so no other queue, in this or other processes, uses it.
+     */
+    private void lock(final FileChannel fc) throws IOException
+    {
+        FileLock lock;
+        try
+        {
+            lock = fc.tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            lock = null;
+        }
+
+        if (lock == null)
+            throw new IOException(String.format("Timer journal [%s] is in use", file));
+    }
+
+    /**
+     * Closes the given channel quietly.
+     */
+    private static void close(final FileChannel fc)
+    {
+        if (fc == null)
+            return;
+
+        try
+        {
+            fc.close();
+        }
+        catch (IOException e)
+        {
+            // do nothing
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock whose time only moves when told to.
+ * <p>
+ * Meant for tests: code driven by timers or timeouts can be run instantly and deterministically
+ * by advancing the clock instead of sleeping. {@link #sleep(long)} advances the clock rather
+ * than blocking, so code waiting on the clock runs without delay too. It is thread-safe.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public final class ManualClock implements MonotonicClock
+{
+    private final AtomicLong time;
+
+    /**
+     * Creates a clock starting at zero.
+     */
+    public ManualClock()
+    {
+        this(0);
+    }
+
+    /**
+     * Creates a clock starting at the given time.
+     * 
+     * @param nanoTime
+     *            the start time in nanoseconds
+     */
+    public ManualClock(final long nanoTime)
+    {
+        this.time = new AtomicLong(nanoTime);
+    }
+
+    @Override
+    public long nanoTime()
+    {
+        return time.get();
+    }
+
+    /**
+     * Advances the clock by the given time instead of sleeping.
+     * 
+     * @param nanos
+     *            the time to advance in nanoseconds; nothing happens if not positive
+     * 
+     * @throws InterruptedException
+     *             if the calling thread is interrupted
+     */
+    @Override
+    public void sleep(final long nanos) throws InterruptedException
+    {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        if (nanos > 0)
+            time.addAndGet(nanos);
+    }
+
+    /**
+     * Moves the clock forward.
+     * 
+     * @param duration
+     *            the amount of time to move
+     * @param unit
+     *            the time unit of the duration
+     * 
+     * @return the new time in nanoseconds
+     * 
+     * @throws IllegalArgumentException
+     *             if the duration is negative or the unit is invalid
+     */
+    public long advance(final long duration, final TimeUnit unit) throws IllegalArgumentException
+    {
+        if (duration < 0)
+            throw new IllegalArgumentException("Invalid duration; a monotonic clock cannot go back");
+        if (unit == null)
+            throw new IllegalArgumentException("Invalid time unit");
+
+        return time.addAndGet(unit.toNanos(duration));
+    }
+}
\ No newline at end of file
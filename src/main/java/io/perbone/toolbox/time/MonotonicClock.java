@@ -0,0 +1,68 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of monotonic time, in nanoseconds from an arbitrary origin.
+ * <p>
+ * Unlike wall clock time it never jumps when the system clock is adjusted, so it is the right
+ * base for delays, timeouts and elapsed times; values are only meaningful relative to each other
+ * and only within the same clock.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public interface MonotonicClock
+{
+    /** The clock backed by {@link System#nanoTime()} */
+    MonotonicClock SYSTEM = new MonotonicClock()
+    {
+        @Override
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Returns the current time of this clock.
+     * 
+     * @return the time in nanoseconds from the clock origin
+     */
+    long nanoTime();
+
+    /**
+     * Waits until this clock has moved forward by the given time.
+     * <p>
+     * Clocks following real time sleep the calling thread; a {@link ManualClock} just advances.
+     * 
+     * @param nanos
+     *            the time to wait in nanoseconds; nothing happens if not positive
+     * 
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting
+     */
+    default void sleep(final long nanos) throws InterruptedException
+    {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which permits are handed out, typically one permit per call.
+ * <p>
+ * A permit is taken with one of three flavors: {@link #tryAcquire(int)} never waits,
+ * {@link #tryAcquire(int, long, TimeUnit)} waits up to a timeout and {@link #acquire(int)} waits
+ * as long as needed. Waits are made on the limiter {@link MonotonicClock}, so a
+ * {@link ManualClock} makes them instant in tests. A timed or blocking call reserves its permits
+ * before waiting; they stay taken even if the wait is interrupted, since later callers may already
+ * be waiting behind them, so an interrupted caller should treat them as spent.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public interface RateLimiter
+{
+    /**
+     * Takes a permit if one is available right now.
+     * 
+     * @return {@code true} if the permit was taken; {@code false} otherwise
+     */
+    boolean tryAcquire();
+
+    /**
+     * Takes the given number of permits if they are available right now.
+     * 
+     * @param permits
+     *            the number of permits
+     * 
+     * @return {@code true} if the permits were taken; {@code false} otherwise
+     * 
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive or above the limiter capacity
+     */
+    boolean tryAcquire(int permits) throws IllegalArgumentException;
+
+    /**
+     * Takes the given number of permits, waiting if they become available within the timeout.
+     * <p>
+     * Returns right away when the permits cannot be available in time.
+     * 
+     * @param permits
+     *            the number of permits
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * 
+     * @return {@code true} if the permits were taken; {@code false} otherwise
+     * 
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive or above the limiter capacity, or the
+     *             unit is invalid
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting; the permits stay taken
+     */
+    boolean tryAcquire(int permits, long timeout, TimeUnit unit)
+            throws IllegalArgumentException, InterruptedException;
+
+    /**
+     * Takes a permit, waiting as long as needed.
+     * 
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting; the permits stay taken
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Takes the given number of permits, waiting as long as needed.
+     * 
+     * @param permits
+     *            the number of permits
+     * 
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive or above the limiter capacity
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting; the permits stay taken
+     */
+    void acquire(int permits) throws IllegalArgumentException, InterruptedException;
+}
\ No newline at end of file
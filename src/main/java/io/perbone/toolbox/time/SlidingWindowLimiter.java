@@ -0,0 +1,203 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter allowing at most a given number of permits within any time window of a given
+ * length.
+ * <p>
+ * Unlike a fixed window counter it has no boundary where twice the limit can pass. It keeps the
+ * times of the last permits handed out in a ring, so a permit is available once the one taken
+ * {@code limit} permits earlier is older than the window; memory grows with the limit, and every
+ * call takes a short lock.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class SlidingWindowLimiter implements RateLimiter
+{
+    private final MonotonicClock clock;
+
+    private final long window;
+
+    /** The times of the last permits, oldest at the head */
+    private final long[] times;
+
+    private int head;
+
+    /**
+     * Creates a limiter reading the system monotonic clock.
+     * 
+     * @param limit
+     *            the maximum number of permits within a window
+     * @param window
+     *            the window length
+     * @param unit
+     *            the time unit of the window
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is invalid
+     */
+    public SlidingWindowLimiter(final int limit, final long window, final TimeUnit unit)
+            throws IllegalArgumentException
+    {
+        this(limit, window, unit, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a limiter reading the given clock.
+     * 
+     * @param limit
+     *            the maximum number of permits within a window
+     * @param window
+     *            the window length
+     * @param unit
+     *            the time unit of the window
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is invalid
+     */
+    public SlidingWindowLimiter(final int limit, final long window, final TimeUnit unit, final MonotonicClock clock)
+            throws IllegalArgumentException
+    {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Invalid limit");
+        if (window <= 0)
+            throw new IllegalArgumentException("Invalid window");
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+        this.window = unit.toNanos(window);
+        this.times = new long[limit];
+
+        long start = clock.nanoTime() - this.window; // nothing taken yet
+        for (int i = 0; i < limit; i++)
+            times[i] = start;
+    }
+
+    /**
+     * Returns the maximum number of permits within a window.
+     * 
+     * @return the limit
+     */
+    public int getLimit()
+    {
+        return times.length;
+    }
+
+    /**
+     * Returns the number of permits that could be taken right now.
+     * 
+     * @return the available permits
+     */
+    public synchronized int getAvailablePermits()
+    {
+        long now = clock.nanoTime();
+
+        int available = 0;
+        while (available < times.length && times[(head + available) % times.length] + window <= now)
+            available++;
+
+        return available;
+    }
+
+    @Override
+    public boolean tryAcquire()
+    {
+        return reserve(1, 0) == 0;
+    }
+
+    @Override
+    public boolean tryAcquire(final int permits) throws IllegalArgumentException
+    {
+        check(permits);
+
+        return reserve(permits, 0) == 0;
+    }
+
+    @Override
+    public boolean tryAcquire(final int permits, final long timeout, final TimeUnit unit)
+            throws IllegalArgumentException, InterruptedException
+    {
+        check(permits);
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        long wait = reserve(permits, Math.max(unit.toNanos(timeout), 0));
+        if (wait < 0)
+            return false;
+
+        clock.sleep(wait);
+        return true;
+    }
+
+    @Override
+    public void acquire() throws InterruptedException
+    {
+        clock.sleep(reserve(1, Long.MAX_VALUE));
+    }
+
+    @Override
+    public void acquire(final int permits) throws IllegalArgumentException, InterruptedException
+    {
+        check(permits);
+
+        clock.sleep(reserve(permits, Long.MAX_VALUE));
+    }
+
+    /**
+     * Takes the permits if they are available within the given time.
+     * <p>
+     * Permits taken ahead of time are recorded at the time they become available, so the ring
+     * stays in time order.
+     * 
+     * @return the time to wait before using the permits, or -1 if they were not taken
+     */
+    private synchronized long reserve(final int permits, final long maxWait)
+    {
+        long now = clock.nanoTime();
+
+        long time = Math.max(times[(head + permits - 1) % times.length] + window, now);
+        long wait = time - now;
+        if (wait > maxWait)
+            return -1;
+
+        for (int i = 0; i < permits; i++)
+        {
+            times[head] = time;
+            head = (head + 1) % times.length;
+        }
+
+        return wait;
+    }
+
+    private void check(final int permits) throws IllegalArgumentException
+    {
+        if (permits <= 0 || permits > times.length)
+            throw new IllegalArgumentException("Invalid number of permits");
+    }
+}
\ No newline at end of file
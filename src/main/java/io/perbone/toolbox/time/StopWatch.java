@@ -21,6 +21,8 @@ package io.perbone.toolbox.time;
 
 import java.util.concurrent.TimeUnit;
 
+import io.perbone.toolbox.metrics.Histogram;
+
 /**
  * Designed to measure the amount of time elapsed from a particular time when activated to when it
  * is deactivated. The precision is nanoseconds but the real observed precision is platform
@@ -194,6 +196,32 @@ public class StopWatch
             throw new IllegalStateException(MSG_ILLEGAL_STATE_NOT_RUNNING);
     }
 
+    /**
+     * Records the elapsed time, in nanoseconds, into the given histogram.
+     * <p>
+     * Meant to be chained after {@link #stop()}, as in {@code stopWatch.stop().recordTo(histogram)};
+     * while running, the time elapsed so far is recorded.
+     * 
+     * @param histogram
+     *            the histogram
+     * 
+     * @return this stop watch
+     * 
+     * @throws IllegalArgumentException
+     *             if the histogram is invalid
+     * @throws IllegalStateException
+     *             if the stop watch was never started
+     */
+    public StopWatch recordTo(final Histogram histogram) throws IllegalArgumentException, IllegalStateException
+    {
+        if (histogram == null)
+            throw new IllegalArgumentException("Invalid histogram");
+
+        histogram.record(elapsedTime());
+
+        return this;
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,52 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+/**
+ * Handle to a timer added to a {@link TimerQueue}, used to cancel it before it is handed out.
+ * <p>
+ * A timer is pending from the time it is added until its queue hands it out as expired or it is
+ * cancelled. Reaching its expiry time alone does not end it: a timer not polled yet is still
+ * pending and can still be cancelled. A queue recording delivery, like {@link DurableTimerQueue},
+ * hands a timer out only once its consumer has returned.
+ * <p>
+ * A cancelled timer leaves the queue right away, so its context is neither kept alive nor
+ * returned as expired.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public interface TimerHandle
+{
+    /**
+     * Removes the timer from its queue.
+     * 
+     * @return {@code true} if the timer was pending and is now cancelled; {@code false} if it had
+     *         already been handed out or cancelled
+     */
+    boolean cancel();
+
+    /**
+     * Tells whether the timer is still in its queue, neither handed out nor cancelled.
+     * 
+     * @return {@code true} if the timer is pending; {@code false} otherwise
+     */
+    boolean isPending();
+}
\ No newline at end of file
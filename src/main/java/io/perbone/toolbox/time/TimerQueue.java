@@ -20,52 +20,89 @@
 package io.perbone.toolbox.time;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * The <code>TimerQueue</code> class contains an ordered list of the timers instances.
  * <p>
  * Timer instances are ordered by the the expiryTime with lowest expiry time in the front.
+ * <p>
+ * Timers are kept in a hierarchical timing wheel with nanosecond ticks, so adding or cancelling a
+ * timer takes constant time and collecting the expired ones costs only in proportion to their
+ * number, however many timers are pending. All methods are thread-safe.
+ * <p>
+ * Expiry times are read from a {@link MonotonicClock}, so adjusting the system clock does not make
+ * timers fire early or late. Tests can pass a {@link ManualClock} and advance it instead of
+ * sleeping.
  * 
  * @author Paulo Perbone <pauloperbone@yahoo.com>
  * @since 0.1.0
  */
 public class TimerQueue
 {
-    private class Timer
+    private class Timer extends TimingWheel.Entry implements TimerHandle
     {
-        public final long delay;
-        public final Object context;
-        public final long expiryTime;
+        public Timer(long expiryTime, Object context)
+        {
+            super(expiryTime, context);
+        }
 
-        public Timer(long delay, Object context)
+        @Override
+        public boolean cancel()
         {
-            this.delay = delay;
-            this.context = context;
-            this.expiryTime = System.currentTimeMillis() + delay;
+            synchronized (TimerQueue.this)
+            {
+                return timers.remove(this);
+            }
         }
-    }
 
-    private class TimerComparator implements Comparator<Timer>
-    {
         @Override
-        public int compare(Timer t1, Timer t2)
+        public boolean isPending()
         {
-            if (t1.delay < t2.delay)
-                return -1;
-            if (t1.delay > t2.delay)
-                return 1;
-            else
-                return 0;
+            synchronized (TimerQueue.this)
+            {
+                return index >= 0;
+            }
         }
     }
 
-    private Queue<Timer> timers = new PriorityBlockingQueue<Timer>(10, new TimerComparator());
+    /** The value returned by {@link #getFirstDelay(TimeUnit)} when the queue is empty */
+    public static final long NO_TIMER = Long.MAX_VALUE;
+
+    private final MonotonicClock clock;
+
+    /** The clock time of the wheel time zero */
+    private final long origin;
+
+    private final TimingWheel timers = new TimingWheel(0);
+
+    /**
+     * Creates a queue reading the system monotonic clock.
+     */
+    public TimerQueue()
+    {
+        this(MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a queue reading the given clock.
+     * 
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if the clock is invalid
+     */
+    public TimerQueue(final MonotonicClock clock) throws IllegalArgumentException
+    {
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+        this.origin = clock.nanoTime();
+    }
 
     /**
      * Adds a timer to the queue.
@@ -76,16 +113,43 @@ public class TimerQueue
      *            The time unit for the delay value
      * @param context
      *            The context object to be passed back at expire time; may be <tt>null</tt>
+     * 
+     * @return the handle to cancel the timer
      */
-    public void add(final long delay, final TimeUnit unit, final Object context)
+    public synchronized TimerHandle add(final long delay, final TimeUnit unit, final Object context)
     {
         if (delay < 0)
             throw new IllegalArgumentException("Cannot add an expired time to the queue");
         else if (unit == null)
             throw new IllegalArgumentException("TimeUnit cannot be null");
 
-        Timer t = new Timer(TimeUnit.MILLISECONDS.convert(delay, unit), context);
+        long now = now();
+        long expiryTime = now + Math.min(unit.toNanos(delay), Long.MAX_VALUE - now);
+        Timer t = new Timer(expiryTime, context);
         timers.add(t);
+
+        return t;
+    }
+
+    /**
+     * Adds a timer expiring at the given deadline.
+     * <p>
+     * Combined with {@link Deadline#current()} it fires when the caller budget is spent, so the
+     * work can be cancelled right then.
+     * 
+     * @param deadline
+     *            the deadline; an expired one expires the timer on the next poll
+     * @param context
+     *            The context object to be passed back at expire time; may be <tt>null</tt>
+     * 
+     * @return the handle to cancel the timer
+     */
+    public TimerHandle add(final Deadline deadline, final Object context)
+    {
+        if (deadline == null)
+            throw new IllegalArgumentException("Deadline cannot be null");
+
+        return add(Math.max(deadline.timeRemaining(TimeUnit.NANOSECONDS), 0), TimeUnit.NANOSECONDS, context);
     }
 
     /**
@@ -97,39 +161,153 @@ public class TimerQueue
      *         queue
      *         <li>Value of 0 denotes that queue is empty
      *         <li>Negative value denotes that elements expire time has passed.
+     * 
+     * @deprecated the empty queue result is also a valid delay; use {@link #getFirstDelay(TimeUnit)}
      */
+    @Deprecated
     public long getFirstDelay()
     {
-        if (timers.isEmpty())
+        long firstDelay = getFirstDelay(TimeUnit.MILLISECONDS);
+        if (firstDelay == NO_TIMER)
             return 0;
-        long firstDelay = timers.peek().expiryTime - System.currentTimeMillis();
         return (0 != firstDelay) ? firstDelay : -1;
     }
 
+    /**
+     * Returns the delay from now to the expiry time of the first timer in the queue.
+     * <p>
+     * Positive delays are rounded up to the given unit, so waiting that long never wakes up
+     * before the timer expires.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * 
+     * @return the delay, zero or negative if the first timer already expired, or {@link #NO_TIMER}
+     *         if the queue is empty
+     * 
+     * @throws IllegalArgumentException
+     *             if the unit is invalid
+     */
+    public synchronized long getFirstDelay(final TimeUnit unit) throws IllegalArgumentException
+    {
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        if (timers.size() == 0)
+            return NO_TIMER;
+
+        long nanos = timers.first() - now();
+        long delay = unit.convert(nanos, TimeUnit.NANOSECONDS);
+        if (nanos > 0 && unit.toNanos(delay) < nanos)
+            delay++;
+
+        return delay;
+    }
+
     /**
      * Returns expired timers
      * <p>
      * If a timer operation was cancelled by that time it will be discarded.
+     * <p>
+     * Timers are returned in expiry time order.
      * 
      * @return collection of timers that expired by now.
      */
-    public List<Object> getExpiredTimers()
+    public synchronized List<Object> getExpiredTimers()
     {
         List<Object> et = new ArrayList<Object>();
-        long now = System.currentTimeMillis();
+        long now = now();
 
-        for (Iterator<Timer> i = timers.iterator(); i.hasNext();)
+        TimingWheel.Entry t;
+        while ((t = timers.poll(now)) != null)
         {
-            Timer t = i.next();
+            if (t.context != null)
+                et.add(t.context);
+        }
+
+        return et;
+    }
+
+    /**
+     * Hands the contexts of the expired timers to the given consumer, in expiry time order.
+     * <p>
+     * Unlike {@link #getExpiredTimers()} nothing is allocated per call. The queue is not locked
+     * while the consumer runs, so it may add or cancel timers itself.
+     * 
+     * @param consumer
+     *            the consumer of the expired timer contexts; timers without context are discarded
+     * 
+     * @return the number of contexts handed to the consumer
+     * 
+     * @throws IllegalArgumentException
+     *             if the consumer is invalid
+     */
+    public int drainExpired(final Consumer<Object> consumer) throws IllegalArgumentException
+    {
+        if (consumer == null)
+            throw new IllegalArgumentException("Invalid consumer");
 
-            if (t.expiryTime <= now)
+        long now = now();
+        int count = 0;
+
+        while (true)
+        {
+            Object context;
+            synchronized (this)
             {
-                i.remove();
-                if (t.context != null)
-                    et.add(t.context);
+                TimingWheel.Entry t = timers.poll(now);
+                if (t == null)
+                    break;
+                context = t.context;
+            }
+
+            if (context != null)
+            {
+                consumer.accept(context);
+                count++;
             }
         }
 
-        return et;
+        return count;
+    }
+
+    /**
+     * Removes every timer, expired or not, handing their contexts to the given consumer.
+     * <p>
+     * As with {@link #drainExpired(Consumer)} the consumer runs without the queue lock.
+     * 
+     * @param consumer
+     *            the consumer of the removed timer contexts; timers without context are discarded
+     * 
+     * @return the number of contexts handed to the consumer
+     */
+    int drainAll(final Consumer<Object> consumer)
+    {
+        int count = 0;
+
+        while (true)
+        {
+            Object context;
+            synchronized (this)
+            {
+                TimingWheel.Entry t = timers.pollAny();
+                if (t == null)
+                    break;
+                context = t.context;
+            }
+
+            if (context != null)
+            {
+                consumer.accept(context);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private long now()
+    {
+        return clock.nanoTime() - origin;
     }
 }
\ No newline at end of file
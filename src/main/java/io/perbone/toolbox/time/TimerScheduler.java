@@ -0,0 +1,646 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Scheduled executor service backed by a {@link TimerQueue}.
+ * <p>
+ * A single timer thread sleeps until the first timer expires and hands every expired task to
+ * the dispatch executor, so tasks never run on the timer thread and a slow task cannot delay the
+ * others. Scheduling and cancelling take constant time however many tasks are pending.
+ * <p>
+ * By default tasks run on virtual threads when the runtime has them (JDK 21 or later) and on the
+ * common fork-join pool otherwise. Periodic tasks never overlap with themselves; when a fixed
+ * rate task runs late, its {@link CatchUp} policy decides whether the missed executions are run
+ * back to back or skipped.
+ * <p>
+ * Shutting down follows the {@link java.util.concurrent.ScheduledThreadPoolExecutor} defaults:
+ * {@link #shutdown()} rejects new tasks but still runs the one shot tasks already scheduled, each
+ * at its time, and stops the periodic ones; {@link #shutdownNow()} cancels every task still
+ * waiting for its time and returns them. Either way tasks already handed to the executor are left
+ * to finish. The dispatch executor itself is never shut down.
+ * <p>
+ * The clock must follow real time, as the timer thread waits on it with timed waits.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class TimerScheduler extends AbstractExecutorService implements ScheduledExecutorService
+{
+    /**
+     * What a fixed rate task does when it runs so late that later executions are already due.
+     */
+    public enum CatchUp
+    {
+        /** Runs the missed executions back to back until the task is on time again */
+        BURST,
+
+        /** Skips the missed executions, keeping the next ones aligned to the original rate */
+        SKIP
+    }
+
+    private class Task<V> extends FutureTask<V> implements RunnableScheduledFuture<V>
+    {
+        /** Positive for fixed rate, negative for fixed delay and zero for one shot tasks */
+        private final long period;
+
+        private volatile long time;
+
+        private volatile TimerHandle handle;
+
+        /** Set while the task is counted as active, from its dispatch until it runs */
+        private volatile boolean dispatched;
+
+        public Task(Runnable runnable, V result, long time, long period)
+        {
+            super(runnable, result);
+            this.time = time;
+            this.period = period;
+        }
+
+        public Task(Callable<V> callable, long time)
+        {
+            super(callable);
+            this.time = time;
+            this.period = 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(time - clock.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            if (other == this)
+                return 0;
+
+            long diff = other instanceof Task ? time - ((Task<?>) other).time
+                    : getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+
+        @Override
+        public boolean isPeriodic()
+        {
+            return period != 0;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            TimerHandle h = handle;
+            if (cancelled && h != null && h.cancel())
+                cancelled(); // the timer thread may be waiting for this task only
+
+            return cancelled;
+        }
+
+        @Override
+        public void run()
+        {
+            // cleared before a periodic task can be dispatched again; runs the scheduler did not
+            // dispatch, like those of the tasks returned by shutdownNow, were never counted
+            boolean counted = dispatched;
+            dispatched = false;
+
+            try
+            {
+                if (!isPeriodic())
+                    super.run();
+                else if (runAndReset())
+                    reschedule();
+            }
+            finally
+            {
+                if (counted)
+                    finished();
+            }
+        }
+
+        private void reschedule()
+        {
+            long now = clock.nanoTime();
+
+            long next;
+            if (period < 0)
+                next = now - period;
+            else if (catchUp == CatchUp.SKIP && time + period <= now)
+                next = time + ((now - time) / period + 1) * period;
+            else
+                next = time + period;
+
+            time = next;
+            if (!enqueue(this))
+                cancel(false); // shut down meanwhile
+        }
+
+        private void reject(RejectedExecutionException e)
+        {
+            setException(e);
+        }
+    }
+
+    private final Executor executor;
+
+    private final MonotonicClock clock;
+
+    private final CatchUp catchUp;
+
+    private final TimerQueue queue;
+
+    private final Thread timer;
+
+    /** Guards the shutdown flags and the timer thread wake up time */
+    private final Object lock = new Object();
+
+    /** Tasks handed to the executor and not finished yet */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Consumer<Object> dispatcher = new Consumer<Object>()
+    {
+        @Override
+        public void accept(Object context)
+        {
+            dispatch((Task<?>) context);
+        }
+    };
+
+    private boolean shutdown;
+
+    /** Set by shutdownNow; the timer thread stops even if tasks are left */
+    private boolean stopped;
+
+    private volatile boolean terminated;
+
+    private volatile boolean timerDone;
+
+    /** The clock time the timer thread waits for; a task due before must wake it up */
+    private long wakeup = Long.MIN_VALUE;
+
+    /**
+     * Creates a scheduler dispatching to virtual threads when available, or to the common
+     * fork-join pool otherwise.
+     */
+    public TimerScheduler()
+    {
+        this(defaultExecutor());
+    }
+
+    /**
+     * Creates a scheduler dispatching to the given executor.
+     * 
+     * @param executor
+     *            the executor running the tasks
+     * 
+     * @throws IllegalArgumentException
+     *             if the executor is invalid
+     */
+    public TimerScheduler(final Executor executor) throws IllegalArgumentException
+    {
+        this(executor, MonotonicClock.SYSTEM, CatchUp.BURST);
+    }
+
+    /**
+     * Creates a scheduler dispatching to the given executor.
+     * 
+     * @param executor
+     *            the executor running the tasks
+     * @param clock
+     *            the clock deciding when tasks are due
+     * @param catchUp
+     *            what late fixed rate tasks do with their missed executions
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is invalid
+     */
+    public TimerScheduler(final Executor executor, final MonotonicClock clock, final CatchUp catchUp)
+            throws IllegalArgumentException
+    {
+        if (executor == null)
+            throw new IllegalArgumentException("Invalid executor");
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+        if (catchUp == null)
+            throw new IllegalArgumentException("Invalid catch up policy");
+
+        this.executor = executor;
+        this.clock = clock;
+        this.catchUp = catchUp;
+        this.queue = new TimerQueue(clock);
+
+        this.timer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, "toolbox-timer-scheduler");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Returns an executor starting a new virtual thread for each task.
+     * 
+     * @return the executor
+     * 
+     * @throws UnsupportedOperationException
+     *             if the runtime has no virtual threads
+     */
+    public static Executor virtualThreadExecutor() throws UnsupportedOperationException
+    {
+        try
+        {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e)
+        {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit)
+    {
+        check(command, unit);
+
+        return enqueueNew(new Task<Void>(command, null, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit)
+    {
+        check(callable, unit);
+
+        return enqueueNew(new Task<V>(callable, deadline(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay,
+            final long period, final TimeUnit unit)
+    {
+        check(command, unit);
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period");
+
+        return enqueueNew(new Task<Void>(command, null, deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay,
+            final long delay, final TimeUnit unit)
+    {
+        check(command, unit);
+        if (delay <= 0)
+            throw new IllegalArgumentException("Invalid delay");
+
+        return enqueueNew(new Task<Void>(command, null, deadline(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(final Runnable command)
+    {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task)
+    {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <T> Future<T> submit(final Runnable task, final T result)
+    {
+        check(task, TimeUnit.NANOSECONDS);
+
+        return enqueueNew(new Task<T>(task, result, deadline(0, TimeUnit.NANOSECONDS), 0));
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task)
+    {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Rejects new tasks and stops the periodic ones; the one shot tasks already scheduled still
+     * run at their time.
+     */
+    @Override
+    public void shutdown()
+    {
+        synchronized (lock)
+        {
+            shutdown = true;
+
+            // the timer thread exits on an empty queue, so the tasks kept are put back before
+            // it can see the queue again
+            final List<Task<?>> kept = new ArrayList<Task<?>>();
+            queue.drainAll(new Consumer<Object>()
+            {
+                @Override
+                public void accept(Object context)
+                {
+                    Task<?> task = (Task<?>) context;
+                    if (task.isPeriodic())
+                        task.cancel(false);
+                    else if (!task.isDone())
+                        kept.add(task);
+                }
+            });
+
+            for (Task<?> task : kept)
+            {
+                task.handle = queue.add(Math.max(task.getDelay(TimeUnit.NANOSECONDS), 0), TimeUnit.NANOSECONDS,
+                        task);
+                if (task.isDone())
+                    task.handle.cancel(); // cancelled while out of the queue
+            }
+
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Cancels every task still waiting for its time, periodic or not.
+     * 
+     * @return the tasks that never ran
+     */
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        synchronized (lock)
+        {
+            shutdown = true;
+            stopped = true;
+            lock.notifyAll();
+        }
+
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        queue.drainAll(new Consumer<Object>()
+        {
+            @Override
+            public void accept(Object context)
+            {
+                Task<?> task = (Task<?>) context;
+                if (task.cancel(false))
+                    pending.add(task);
+            }
+        });
+        timer.interrupt();
+
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        synchronized (lock)
+        {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        if (!terminated && timerDone && active.get() == 0 && isShutdown())
+            terminated = true;
+
+        return terminated;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        long deadline = clock.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (lock)
+        {
+            while (!isTerminated())
+            {
+                long remaining = deadline - clock.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    private void check(final Object task, final TimeUnit unit) throws IllegalArgumentException
+    {
+        if (task == null)
+            throw new IllegalArgumentException("Invalid task");
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+    }
+
+    private long deadline(final long delay, final TimeUnit unit)
+    {
+        long now = clock.nanoTime();
+        return now + Math.min(Math.max(unit.toNanos(delay), 0), Long.MAX_VALUE - now);
+    }
+
+    private <V> Task<V> enqueueNew(final Task<V> task) throws RejectedExecutionException
+    {
+        if (!enqueue(task))
+            throw new RejectedExecutionException("Scheduler is shut down");
+
+        return task;
+    }
+
+    /**
+     * Adds the task to the timer queue, waking up the timer thread if the task is due before the
+     * time it waits for.
+     * 
+     * @return {@code false} if the scheduler is shut down
+     */
+    private boolean enqueue(final Task<?> task)
+    {
+        synchronized (lock)
+        {
+            if (shutdown)
+                return false;
+
+            long delay = Math.max(task.getDelay(TimeUnit.NANOSECONDS), 0);
+            task.handle = queue.add(delay, TimeUnit.NANOSECONDS, task);
+            if (task.time < wakeup)
+                lock.notify();
+        }
+
+        return true;
+    }
+
+    /**
+     * Wakes the timer thread up so it reads the clock again.
+     * <p>
+     * Needed when the clock is moved by hand, as with a {@link ManualClock} in tests.
+     */
+    void wakeUp()
+    {
+        synchronized (lock)
+        {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Lets a shut down timer thread find out its queue may be empty now.
+     */
+    private void cancelled()
+    {
+        synchronized (lock)
+        {
+            if (shutdown)
+                lock.notifyAll();
+        }
+    }
+
+    private void loop()
+    {
+        try
+        {
+            while (await())
+                queue.drainExpired(dispatcher);
+        }
+        finally
+        {
+            synchronized (lock)
+            {
+                timerDone = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the first task to be due.
+     * 
+     * @return {@code false} if the scheduler was shut down now, or shut down and no task is left
+     */
+    private boolean await()
+    {
+        synchronized (lock)
+        {
+            while (!stopped)
+            {
+                long delay = queue.getFirstDelay(TimeUnit.NANOSECONDS);
+                if (delay <= 0)
+                {
+                    wakeup = Long.MIN_VALUE; // awake; nobody needs to notify
+                    return true;
+                }
+                if (delay == TimerQueue.NO_TIMER && shutdown)
+                    break;
+
+                try
+                {
+                    if (delay == TimerQueue.NO_TIMER)
+                    {
+                        wakeup = Long.MAX_VALUE;
+                        lock.wait();
+                    }
+                    else
+                    {
+                        wakeup = clock.nanoTime() + delay;
+                        TimeUnit.NANOSECONDS.timedWait(lock, delay);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    continue; // shut down now or spurious; the loop condition decides
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private void dispatch(final Task<?> task)
+    {
+        if (task.isDone())
+            return;
+
+        active.incrementAndGet();
+        task.dispatched = true;
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            task.dispatched = false;
+            task.reject(e);
+            finished();
+        }
+    }
+
+    private void finished()
+    {
+        if (active.decrementAndGet() == 0 && timerDone)
+        {
+            synchronized (lock)
+            {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static Executor defaultExecutor()
+    {
+        try
+        {
+            return virtualThreadExecutor();
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return ForkJoinPool.commonPool();
+        }
+    }
+}
\ No newline at end of file
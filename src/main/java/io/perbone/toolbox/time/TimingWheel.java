@@ -0,0 +1,330 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+/**
+ * Hierarchical timing wheel holding entries by absolute deadline.
+ * <p>
+ * Time is a non-negative tick count split into 6-bit digits, one wheel level of 64 slots per
+ * digit; 11 levels cover the whole {@code long} range. An entry lives at the level of the highest
+ * digit where its deadline differs from the wheel current time, in the slot of that digit, so
+ * lower levels always hold earlier deadlines. Each level keeps a bitmap of its occupied slots.
+ * <p>
+ * Adding and removing are constant time. Advancing the wheel jumps straight to the next occupied
+ * slot instead of ticking through empty ones; a slot coming due at level 0 expires all of its
+ * entries, while a slot coming due at a higher level is cascaded down, each entry moving to a
+ * lower level or expiring. The work is thus proportional to the entries actually expired, plus
+ * at most one move per level for each of them.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+final class TimingWheel
+{
+    private static final int BITS = 6;
+
+    private static final int SLOTS = 1 << BITS;
+
+    private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+    /** Index of the list of entries whose deadline was reached but were not polled yet */
+    private static final int DUE = LEVELS * SLOTS;
+
+    /**
+     * A wheel entry, linked into one slot list at a time.
+     */
+    static class Entry
+    {
+        final long deadline;
+
+        final Object context;
+
+        /** The slot list index or -1 when not in the wheel */
+        int index = -1;
+
+        Entry prev;
+
+        Entry next;
+
+        Entry(final long deadline, final Object context)
+        {
+            this.deadline = deadline;
+            this.context = context;
+        }
+    }
+
+    private final Entry[] heads = new Entry[DUE + 1];
+
+    private final Entry[] tails = new Entry[DUE + 1];
+
+    /** Occupied slots by level, one bit per slot */
+    private final long[] occupied = new long[LEVELS];
+
+    private long current;
+
+    private int size;
+
+    /** The earliest deadline when known */
+    private long first;
+
+    private boolean firstKnown;
+
+    /**
+     * Creates a wheel starting at the given time.
+     * 
+     * @param now
+     *            the start time in ticks; must not be negative
+     */
+    TimingWheel(final long now)
+    {
+        this.current = now;
+    }
+
+    /**
+     * Returns the number of entries in the wheel, expired ones included.
+     * 
+     * @return the number of entries
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds an entry to the wheel; a deadline not after the wheel time expires on the next poll.
+     * 
+     * @param entry
+     *            the entry, not in the wheel yet
+     */
+    void add(final Entry entry)
+    {
+        schedule(entry);
+
+        if (size++ == 0)
+        {
+            first = entry.deadline;
+            firstKnown = true;
+        }
+        else if (firstKnown && entry.deadline < first)
+            first = entry.deadline;
+    }
+
+    /**
+     * Removes an entry from the wheel.
+     * 
+     * @param entry
+     *            the entry
+     * 
+     * @return {@code true} if the entry was in the wheel; {@code false} if it had already been
+     *         polled or removed
+     */
+    boolean remove(final Entry entry)
+    {
+        if (entry.index < 0)
+            return false;
+
+        unlink(entry);
+        size--;
+        if (entry.deadline == first)
+            firstKnown = false;
+
+        return true;
+    }
+
+    /**
+     * Returns the earliest deadline in the wheel.
+     * <p>
+     * Only the lowest occupied slot is looked at, and the result is kept until that entry leaves.
+     * 
+     * @return the earliest deadline or {@link Long#MAX_VALUE} if the wheel is empty
+     */
+    long first()
+    {
+        if (size == 0)
+            return Long.MAX_VALUE;
+
+        if (!firstKnown)
+        {
+            int index = DUE;
+            if (heads[DUE] == null)
+            {
+                int level = 0;
+                while (occupied[level] == 0)
+                    level++;
+                index = level * SLOTS + Long.numberOfTrailingZeros(occupied[level]);
+            }
+
+            long min = Long.MAX_VALUE;
+            for (Entry e = heads[index]; e != null; e = e.next)
+                min = Math.min(min, e.deadline);
+
+            first = min;
+            firstKnown = true;
+        }
+
+        return first;
+    }
+
+    /**
+     * Removes and returns the next entry whose deadline is not after the given time.
+     * <p>
+     * Entries are returned in deadline order; those sharing a deadline, or added with a deadline
+     * already reached, are returned in the order they were added.
+     * 
+     * @param now
+     *            the current time in ticks
+     * 
+     * @return the expired entry or {@code null} if none
+     */
+    Entry poll(final long now)
+    {
+        while (heads[DUE] == null)
+        {
+            if (!advance(now))
+                return null;
+        }
+
+        Entry entry = heads[DUE];
+        remove(entry);
+
+        return entry;
+    }
+
+    /**
+     * Removes and returns any entry, whatever its deadline.
+     * 
+     * @return an entry or {@code null} if the wheel is empty
+     */
+    Entry pollAny()
+    {
+        if (size == 0)
+            return null;
+
+        int index = DUE;
+        if (heads[DUE] == null)
+        {
+            int level = 0;
+            while (occupied[level] == 0)
+                level++;
+            index = level * SLOTS + Long.numberOfTrailingZeros(occupied[level]);
+        }
+
+        Entry entry = heads[index];
+        remove(entry);
+
+        return entry;
+    }
+
+    /**
+     * Moves the wheel time to the next occupied slot, if that is not after the given time, and
+     * empties that slot.
+     * 
+     * @return {@code false} if nothing else is due by the given time
+     */
+    private boolean advance(final long now)
+    {
+        if (now <= current)
+            return false;
+
+        int level = 0;
+        while (level < LEVELS && occupied[level] == 0)
+            level++;
+
+        if (level == LEVELS)
+        {
+            current = now;
+            return false;
+        }
+
+        int slot = Long.numberOfTrailingZeros(occupied[level]);
+        int shift = level * BITS;
+        long upper = shift + BITS >= Long.SIZE ? 0 : current & (-1L << (shift + BITS));
+        long start = upper | ((long) slot << shift);
+        if (start > now)
+        {
+            current = now; // still before the slot, so every entry keeps its place
+            return false;
+        }
+
+        current = start;
+
+        int index = level * SLOTS + slot;
+        Entry e = heads[index];
+        heads[index] = null;
+        tails[index] = null;
+        occupied[level] &= ~(1L << slot);
+
+        while (e != null)
+        {
+            Entry next = e.next;
+            schedule(e);
+            e = next;
+        }
+
+        return true;
+    }
+
+    private void schedule(final Entry entry)
+    {
+        int index;
+        if (entry.deadline <= current)
+            index = DUE;
+        else
+        {
+            int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(entry.deadline ^ current)) / BITS;
+            int slot = (int) (entry.deadline >>> (level * BITS)) & (SLOTS - 1);
+            occupied[level] |= 1L << slot;
+            index = level * SLOTS + slot;
+        }
+
+        entry.index = index;
+        entry.next = null;
+        entry.prev = tails[index];
+        if (tails[index] == null)
+            heads[index] = entry;
+        else
+            tails[index].next = entry;
+        tails[index] = entry;
+    }
+
+    private void unlink(final Entry entry)
+    {
+        int index = entry.index;
+
+        if (entry.prev == null)
+            heads[index] = entry.next;
+        else
+            entry.prev.next = entry.next;
+
+        if (entry.next == null)
+            tails[index] = entry.prev;
+        else
+            entry.next.prev = entry.prev;
+
+        if (heads[index] == null && index != DUE)
+            occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+
+        entry.index = -1;
+        entry.prev = null;
+        entry.next = null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter.
+ * <p>
+ * The bucket refills at a steady rate up to its capacity, so it allows bursts of up to capacity
+ * permits and the given rate on average. It is implemented as the generic cell rate algorithm:
+ * instead of a token count the only state is the theoretical arrival time, the time the bucket
+ * would be full again, kept in one {@link AtomicLong}. Taking permits pushes it forward by one
+ * emission interval per permit and is allowed while it stays within the burst tolerance of now;
+ * a single compare-and-set does it, with no refill thread nor lock.
+ * 
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class TokenBucket implements RateLimiter
+{
+    private final MonotonicClock clock;
+
+    private final long capacity;
+
+    /** Nanoseconds per permit */
+    private final long interval;
+
+    /** How far ahead of now the arrival time may go; capacity times the interval */
+    private final long tolerance;
+
+    /** The theoretical arrival time */
+    private final AtomicLong arrival;
+
+    /**
+     * Creates a bucket reading the system monotonic clock.
+     * 
+     * @param permits
+     *            the number of permits per period
+     * @param period
+     *            the period
+     * @param unit
+     *            the time unit of the period
+     * @param capacity
+     *            the maximum burst size
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is invalid
+     */
+    public TokenBucket(final long permits, final long period, final TimeUnit unit, final long capacity)
+            throws IllegalArgumentException
+    {
+        this(permits, period, unit, capacity, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates a bucket reading the given clock.
+     * 
+     * @param permits
+     *            the number of permits per period
+     * @param period
+     *            the period
+     * @param unit
+     *            the time unit of the period
+     * @param capacity
+     *            the maximum burst size
+     * @param clock
+     *            the clock
+     * 
+     * @throws IllegalArgumentException
+     *             if any parameter is invalid or the rate is above one permit per nanosecond
+     */
+    public TokenBucket(final long permits, final long period, final TimeUnit unit, final long capacity,
+            final MonotonicClock clock) throws IllegalArgumentException
+    {
+        if (permits <= 0)
+            throw new IllegalArgumentException("Invalid number of permits");
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period");
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity");
+        if (clock == null)
+            throw new IllegalArgumentException("Invalid clock");
+
+        this.clock = clock;
+        this.capacity = capacity;
+        this.interval = unit.toNanos(period) / permits;
+        if (interval == 0)
+            throw new IllegalArgumentException("Invalid rate; above one permit per nanosecond");
+        if (capacity > Long.MAX_VALUE / interval)
+            throw new IllegalArgumentException("Invalid capacity; too big for the rate");
+        this.tolerance = capacity * interval;
+        this.arrival = new AtomicLong(clock.nanoTime()); // starts full
+    }
+
+    /**
+     * Returns the maximum burst size.
+     * 
+     * @return the capacity
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of permits that could be taken right now.
+     * 
+     * @return the available permits; zero while permits reserved ahead of time are pending
+     */
+    public long getAvailablePermits()
+    {
+        long now = clock.nanoTime();
+        return Math.max(tolerance - Math.max(arrival.get() - now, 0), 0) / interval;
+    }
+
+    @Override
+    public boolean tryAcquire()
+    {
+        return reserve(1, 0) == 0;
+    }
+
+    @Override
+    public boolean tryAcquire(final int permits) throws IllegalArgumentException
+    {
+        check(permits);
+
+        return reserve(permits, 0) == 0;
+    }
+
+    @Override
+    public boolean tryAcquire(final int permits, final long timeout, final TimeUnit unit)
+            throws IllegalArgumentException, InterruptedException
+    {
+        check(permits);
+        if (unit == null)
+            throw new IllegalArgumentException("TimeUnit cannot be null");
+
+        long wait = reserve(permits, Math.max(unit.toNanos(timeout), 0));
+        if (wait < 0)
+            return false;
+
+        clock.sleep(wait);
+        return true;
+    }
+
+    @Override
+    public void acquire() throws InterruptedException
+    {
+        clock.sleep(reserve(1, Long.MAX_VALUE));
+    }
+
+    @Override
+    public void acquire(final int permits) throws IllegalArgumentException, InterruptedException
+    {
+        check(permits);
+
+        clock.sleep(reserve(permits, Long.MAX_VALUE));
+    }
+
+    /**
+     * Takes the permits if they are available within the given time.
+     * 
+     * @return the time to wait before using the permits, or -1 if they were not taken
+     */
+    private long reserve(final int permits, final long maxWait)
+    {
+        long cost = permits * interval;
+
+        while (true)
+        {
+            long now = clock.nanoTime();
+            long current = arrival.get();
+            long next = Math.max(current, now) + cost;
+            long wait = Math.max(next - now - tolerance, 0);
+            if (wait > maxWait)
+                return -1;
+            if (arrival.compareAndSet(current, next))
+                return wait;
+        }
+    }
+
+    private void check(final int permits) throws IllegalArgumentException
+    {
+        if (permits <= 0 || permits > capacity)
+            throw new IllegalArgumentException("Invalid number of permits");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class ConversionsTest
+{
+    @Test
+    public void toDuration()
+    {
+        assertEquals(Duration.ofMillis(250), Conversions.toDuration("250"));
+        assertEquals(Duration.ofNanos(15), Conversions.toDuration("15ns"));
+        assertEquals(Duration.ofNanos(15000), Conversions.toDuration("15us"));
+        assertEquals(Duration.ofMillis(15), Conversions.toDuration(" 15 ms "));
+        assertEquals(Duration.ofSeconds(30), Conversions.toDuration("30s"));
+        assertEquals(Duration.ofMinutes(5), Conversions.toDuration("5m"));
+        assertEquals(Duration.ofMinutes(5), Conversions.toDuration("5MIN"));
+        assertEquals(Duration.ofHours(2), Conversions.toDuration("2h"));
+        assertEquals(Duration.ofDays(1), Conversions.toDuration("1d"));
+        assertEquals(Duration.ofSeconds(90), Conversions.toDuration("PT1M30S"));
+
+        for (String raw : new String[] { "", "s", "5 weeks", "1.5s", "PT" })
+            assertInvalidDuration(raw);
+    }
+
+    @Test
+    public void toSize()
+    {
+        assertEquals(0, Conversions.toSize("0"));
+        assertEquals(512, Conversions.toSize("512"));
+        assertEquals(512, Conversions.toSize("512b"));
+        assertEquals(2048, Conversions.toSize("2KiB"));
+        assertEquals(512L << 20, Conversions.toSize("512 MiB"));
+        assertEquals(3L << 30, Conversions.toSize("3gib"));
+        assertEquals(1L << 40, Conversions.toSize("1TiB"));
+        assertEquals(2000, Conversions.toSize("2kB"));
+        assertEquals(512000000L, Conversions.toSize("512MB"));
+        assertEquals(1536, Conversions.toSize("1.5KiB"));
+        assertEquals(4000000000000L, Conversions.toSize("4tb"));
+
+        for (String raw : new String[] { "512m", "2k", "1g", "1t", "-1", "-1KiB", "-0.5MB", "1PB", "KiB",
+                "9223372036854775807KiB" })
+            assertInvalidSize(raw);
+    }
+
+    @Test
+    public void toIntSize()
+    {
+        assertEquals(1 << 30, Conversions.toIntSize("1GiB"));
+
+        try
+        {
+            Conversions.toIntSize("2GiB");
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    private void assertInvalidDuration(final String raw)
+    {
+        try
+        {
+            Conversions.toDuration(raw);
+            fail(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    private void assertInvalidSize(final String raw)
+    {
+        try
+        {
+            Conversions.toSize(raw);
+            fail(raw);
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class SharedSettingsTest
+{
+    /** The offset of the version word, as laid out by SharedSettings */
+    private static final int VERSION_OFFSET = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String path;
+
+    private SharedSettings publisher;
+
+    private SharedSettings reader;
+
+    @Before
+    public void before()
+    {
+        path = new File(folder.getRoot(), "settings.shm").getPath();
+        publisher = new SharedSettings(path, 4096);
+        reader = new SharedSettings(path, 4096);
+    }
+
+    @After
+    public void after() throws IOException
+    {
+        publisher.close();
+        reader.close();
+    }
+
+    @Test
+    public void publish()
+    {
+        assertEquals(0, reader.version());
+        assertTrue(reader.snapshot().isEmpty());
+
+        assertEquals(2, publisher.publish(Collections.singletonMap("a", "1")));
+        assertEquals(Collections.singletonMap("a", "1"), reader.snapshot());
+        assertEquals(4, publisher.publish(Collections.singletonMap("a", "2")));
+        assertEquals(Collections.singletonMap("a", "2"), reader.snapshot());
+    }
+
+    @Test
+    public void deadPublisher() throws IOException
+    {
+        publisher.publish(Collections.singletonMap("a", "1"));
+        assertEquals(Collections.singletonMap("a", "1"), reader.snapshot());
+
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw"))
+        {
+            raf.seek(VERSION_OFFSET);
+            raf.writeLong(3); // version word left odd, the table half written
+            raf.seek(64);
+            raf.write(0x7F);
+        }
+
+        assertEquals(3, reader.version());
+        assertEquals(Collections.singletonMap("a", "1"), reader.snapshot());
+        assertEquals(Collections.singletonMap("a", "1"), reader.snapshot());
+
+        Settings settings = new Settings();
+        assertTrue(reader.refresh(settings, "shared", 10));
+        assertFalse(reader.refresh(settings, "shared", 10));
+
+        assertEquals(6, publisher.publish(Collections.singletonMap("a", "3")));
+        assertEquals(Collections.singletonMap("a", "3"), reader.snapshot());
+        assertTrue(reader.refresh(settings, "shared", 10));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class DurableTimerQueueTest
+{
+    /** The journal header and record framing sizes, as laid out by the queue */
+    private static final int HEADER_SIZE = 16;
+
+    private static final int RECORD_OVERHEAD = 29;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String path;
+
+    private DurableTimerQueue queue;
+
+    @Before
+    public void before() throws IOException
+    {
+        path = new File(folder.getRoot(), "timers.journal").getPath();
+        queue = open(4096);
+    }
+
+    @After
+    public void after() throws IOException
+    {
+        queue.close();
+    }
+
+    @Test
+    public void tornRecord() throws IOException
+    {
+        queue.add(0, TimeUnit.SECONDS, new byte[] { 'a' });
+        queue.add(0, TimeUnit.SECONDS, new byte[] { 'b' });
+        queue.close();
+
+        int torn = HEADER_SIZE + RECORD_OVERHEAD + 1;
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw"))
+        {
+            raf.seek(torn);
+            raf.writeInt(0);
+            raf.seek(torn + 200);
+            raf.write(0x7F);
+        }
+
+        queue = open(4096);
+        assertEquals(1, queue.size());
+        assertArrayEquals(new byte[] { 'a' }, queue.getTimers().get(0).getPayload());
+        queue.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r"))
+        {
+            raf.seek(torn);
+            for (long i = torn; i < raf.length(); i++)
+                assertEquals("byte at " + i, 0, raf.read());
+        }
+
+        queue = open(4096);
+        DurableTimerQueue.Timer c = queue.add(0, TimeUnit.SECONDS, new byte[] { 'c' });
+        assertEquals(3, c.getId());
+        queue.close();
+
+        queue = open(4096);
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.getTimers().get(1).getId());
+    }
+
+    @Test
+    public void compactionAndGrowth() throws IOException
+    {
+        Set<Long> ids = new HashSet<Long>();
+        List<DurableTimerQueue.Timer> kept = new ArrayList<DurableTimerQueue.Timer>();
+        for (int i = 0; i < 500; i++)
+        {
+            DurableTimerQueue.Timer t = queue.add(1, TimeUnit.HOURS, new byte[100]);
+            assertTrue(ids.add(t.getId()));
+            if (i % 5 == 0)
+                kept.add(t);
+            else
+                assertTrue(t.cancel());
+        }
+        assertTrue(new File(path).length() > 4096);
+
+        for (int i = 0; i < 3; i++)
+            assertTrue(queue.add(1, TimeUnit.HOURS, null).cancel());
+        queue.compact();
+        queue.close();
+
+        queue = open(4096);
+        assertEquals(kept.size(), queue.size());
+        for (int i = 0; i < kept.size(); i++)
+        {
+            assertEquals(kept.get(i).getId(), queue.getTimers().get(i).getId());
+            assertEquals(100, queue.getTimers().get(i).getPayload().length);
+        }
+        assertEquals(504, queue.add(1, TimeUnit.HOURS, null).getId());
+    }
+
+    @Test
+    public void redelivery() throws IOException
+    {
+        queue.add(0, TimeUnit.SECONDS, new byte[] { 'a' });
+        queue.add(0, TimeUnit.SECONDS, new byte[] { 'b' });
+        queue.add(0, TimeUnit.SECONDS, new byte[] { 'c' });
+
+        final List<Character> handled = new ArrayList<Character>();
+        try
+        {
+            queue.drainExpired(new Consumer<DurableTimerQueue.Timer>()
+            {
+                @Override
+                public void accept(final DurableTimerQueue.Timer t)
+                {
+                    if (handled.size() == 1)
+                        throw new IllegalStateException();
+                    handled.add((char) t.getPayload()[0]);
+                }
+            });
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals(2, queue.size());
+        }
+
+        queue.close();
+        queue = open(4096);
+
+        int count = queue.drainExpired(new Consumer<DurableTimerQueue.Timer>()
+        {
+            @Override
+            public void accept(final DurableTimerQueue.Timer t)
+            {
+                handled.add((char) t.getPayload()[0]);
+            }
+        });
+
+        assertEquals(2, count);
+        assertEquals(new HashSet<Character>(Arrays.asList('a', 'b', 'c')), new HashSet<Character>(handled));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void cancelDuringDrain() throws IOException
+    {
+        final DurableTimerQueue.Timer a = queue.add(0, TimeUnit.SECONDS, new byte[] { 'a' });
+        final DurableTimerQueue.Timer b = queue.add(0, TimeUnit.SECONDS, new byte[] { 'b' });
+
+        final List<Character> handled = new ArrayList<Character>();
+        int count = queue.drainExpired(new Consumer<DurableTimerQueue.Timer>()
+        {
+            @Override
+            public void accept(final DurableTimerQueue.Timer t)
+            {
+                handled.add((char) t.getPayload()[0]);
+                (t.getId() == a.getId() ? b : a).cancel();
+            }
+        });
+
+        assertEquals(1, count);
+        assertEquals(1, handled.size());
+        assertFalse(a.isPending());
+        assertFalse(b.isPending());
+        assertEquals(0, queue.size());
+    }
+
+    private DurableTimerQueue open(final int capacity) throws IOException
+    {
+        return new DurableTimerQueue(path, capacity, 10, TimeUnit.MILLISECONDS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class SlidingWindowLimiterTest
+{
+    private ManualClock clock;
+
+    private SlidingWindowLimiter limiter;
+
+    @Before
+    public void before()
+    {
+        clock = new ManualClock(TimeUnit.DAYS.toNanos(3));
+        limiter = new SlidingWindowLimiter(3, 1, TimeUnit.SECONDS, clock);
+    }
+
+    @Test
+    public void windowExpiry()
+    {
+        assertEquals(3, limiter.getAvailablePermits());
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(limiter.tryAcquire());
+            clock.advance(200, TimeUnit.MILLISECONDS);
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.getAvailablePermits());
+
+        clock.advance(399, TimeUnit.MILLISECONDS); // the first permit is 999ms old
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, limiter.getAvailablePermits());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        clock.advance(400, TimeUnit.MILLISECONDS);
+        assertEquals(2, limiter.getAvailablePermits());
+        assertFalse(limiter.tryAcquire(3));
+        assertTrue(limiter.tryAcquire(2));
+
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(3, limiter.getAvailablePermits());
+    }
+
+    @Test
+    public void timedAcquire() throws InterruptedException
+    {
+        assertTrue(limiter.tryAcquire(2));
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire());
+
+        long start = clock.nanoTime();
+        assertFalse(limiter.tryAcquire(3, 600, TimeUnit.MILLISECONDS));
+        assertEquals(start, clock.nanoTime());
+
+        // both permits taken first leave the window in 500ms
+        assertTrue(limiter.tryAcquire(2, 500, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), clock.nanoTime() - start);
+        assertEquals(0, limiter.getAvailablePermits());
+
+        limiter.acquire();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), clock.nanoTime() - start);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void permitsAboveLimit()
+    {
+        limiter.tryAcquire(4);
+    }
+}
\ No newline at end of file
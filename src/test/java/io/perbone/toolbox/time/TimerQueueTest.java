@@ -0,0 +1,134 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class TimerQueueTest
+{
+    private ManualClock clock;
+
+    private TimerQueue queue;
+
+    @Before
+    public void before()
+    {
+        clock = new ManualClock(TimeUnit.DAYS.toNanos(3));
+        queue = new TimerQueue(clock);
+    }
+
+    @Test
+    public void expiryOrder()
+    {
+        queue.add(30, TimeUnit.MILLISECONDS, "c");
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        queue.add(5, TimeUnit.MILLISECONDS, "a");
+        queue.add(10, TimeUnit.MILLISECONDS, "b");
+        queue.add(1, TimeUnit.HOURS, "d");
+
+        assertEquals(Arrays.<Object> asList(), queue.getExpiredTimers());
+        clock.advance(30, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.<Object> asList("a", "b", "c"), queue.getExpiredTimers());
+        assertEquals(TimeUnit.HOURS.toMillis(1) - 30, queue.getFirstDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void firstDelay()
+    {
+        assertEquals(TimerQueue.NO_TIMER, queue.getFirstDelay(TimeUnit.NANOSECONDS));
+
+        queue.add(1500, TimeUnit.MICROSECONDS, "a");
+        assertEquals(2, queue.getFirstDelay(TimeUnit.MILLISECONDS));
+        assertEquals(1500000, queue.getFirstDelay(TimeUnit.NANOSECONDS));
+
+        clock.advance(1500, TimeUnit.MICROSECONDS);
+        assertEquals(0, queue.getFirstDelay(TimeUnit.NANOSECONDS));
+        clock.advance(1, TimeUnit.SECONDS);
+        assertEquals(-1, queue.getFirstDelay(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel()
+    {
+        TimerHandle a = queue.add(10, TimeUnit.SECONDS, "a");
+        TimerHandle b = queue.add(20, TimeUnit.SECONDS, "b");
+
+        assertTrue(a.cancel());
+        assertFalse(a.cancel());
+        assertFalse(a.isPending());
+        assertEquals(20, queue.getFirstDelay(TimeUnit.SECONDS));
+
+        clock.advance(1, TimeUnit.MINUTES);
+        assertEquals(Arrays.<Object> asList("b"), queue.getExpiredTimers());
+        assertFalse(b.isPending());
+        assertFalse(b.cancel());
+    }
+
+    @Test
+    public void pendingUntilHandedOut()
+    {
+        TimerHandle a = queue.add(10, TimeUnit.SECONDS, "a");
+        TimerHandle b = queue.add(10, TimeUnit.SECONDS, "b");
+
+        clock.advance(1, TimeUnit.MINUTES);
+        assertTrue(a.isPending());
+        assertTrue(a.cancel());
+        assertEquals(Arrays.<Object> asList("b"), queue.getExpiredTimers());
+        assertFalse(b.isPending());
+    }
+
+    @Test
+    public void drainExpired()
+    {
+        final List<Object> expired = new ArrayList<Object>();
+        for (int i = 0; i < 1000; i++)
+            queue.add(i, TimeUnit.SECONDS, i % 2 == 0 ? i : null);
+
+        clock.advance(499, TimeUnit.SECONDS);
+        int count = queue.drainExpired(new Consumer<Object>()
+        {
+            @Override
+            public void accept(final Object context)
+            {
+                expired.add(context);
+            }
+        });
+
+        assertEquals(250, count);
+        assertEquals(0, expired.get(0));
+        assertEquals(498, expired.get(249));
+        assertEquals(1, queue.getFirstDelay(TimeUnit.SECONDS));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class TimerSchedulerTest
+{
+    private ManualClock clock;
+
+    /** The tasks dispatched by the scheduler, run by the test thread */
+    private BlockingQueue<Runnable> dispatched;
+
+    private AtomicInteger runs;
+
+    private Runnable counter;
+
+    private TimerScheduler scheduler;
+
+    @Before
+    public void before()
+    {
+        clock = new ManualClock(TimeUnit.DAYS.toNanos(3));
+        dispatched = new LinkedBlockingQueue<Runnable>();
+        runs = new AtomicInteger();
+        counter = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runs.incrementAndGet();
+            }
+        };
+        scheduler = create(TimerScheduler.CatchUp.BURST);
+    }
+
+    @After
+    public void after()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void fixedRateBurst() throws InterruptedException
+    {
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(counter, 10, 10, TimeUnit.SECONDS);
+        assertIdle();
+
+        advance(10);
+        next().run();
+        assertEquals(1, runs.get());
+        assertEquals(10, future.getDelay(TimeUnit.SECONDS));
+
+        advance(35); // the runs due at 20, 30 and 40 are late
+        for (int i = 0; i < 3; i++)
+            next().run();
+        assertIdle();
+        assertEquals(4, runs.get());
+        assertEquals(5, future.getDelay(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fixedRateSkip() throws InterruptedException
+    {
+        scheduler.shutdownNow();
+        scheduler = create(TimerScheduler.CatchUp.SKIP);
+
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(counter, 10, 10, TimeUnit.SECONDS);
+        advance(10);
+        next().run();
+
+        advance(35); // the runs due at 30 and 40 are skipped
+        next().run();
+        assertIdle();
+        assertEquals(2, runs.get());
+        assertEquals(5, future.getDelay(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fixedDelay() throws InterruptedException
+    {
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runs.incrementAndGet();
+                clock.advance(7, TimeUnit.SECONDS); // a slow run
+            }
+        }, 10, 10, TimeUnit.SECONDS);
+
+        advance(10);
+        next().run();
+        assertEquals(10, future.getDelay(TimeUnit.SECONDS));
+
+        advance(9);
+        assertIdle();
+        advance(1);
+        next().run();
+        assertEquals(2, runs.get());
+        assertEquals(10, future.getDelay(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdown() throws InterruptedException
+    {
+        for (int i = 0; i < 3; i++)
+            scheduler.submit(counter);
+        ScheduledFuture<?> delayed = scheduler.schedule(counter, 1, TimeUnit.HOURS);
+        ScheduledFuture<?> periodic = scheduler.scheduleAtFixedRate(counter, 1, 1, TimeUnit.SECONDS);
+
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+        assertTrue(periodic.isCancelled());
+        try
+        {
+            scheduler.submit(counter);
+            fail();
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+
+        for (int i = 0; i < 3; i++)
+            next().run();
+        assertIdle();
+        assertFalse(scheduler.isTerminated());
+
+        advance(TimeUnit.HOURS.toSeconds(1));
+        next().run();
+        assertTrue(delayed.isDone());
+        assertEquals(4, runs.get());
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownRunsSubmitted() throws InterruptedException
+    {
+        scheduler.shutdownNow();
+        scheduler = new TimerScheduler(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, clock, TimerScheduler.CatchUp.BURST);
+
+        for (int i = 0; i < 1000; i++)
+            scheduler.submit(counter);
+        scheduler.shutdown();
+
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1000, runs.get());
+    }
+
+    @Test
+    public void shutdownNow() throws InterruptedException
+    {
+        ScheduledFuture<?> delayed = scheduler.schedule(counter, 1, TimeUnit.HOURS);
+        scheduler.schedule(counter, 2, TimeUnit.HOURS);
+        ScheduledFuture<?> periodic = scheduler.scheduleWithFixedDelay(counter, 1, 1, TimeUnit.SECONDS);
+
+        List<Runnable> pending = scheduler.shutdownNow();
+        assertEquals(3, pending.size());
+        assertTrue(delayed.isCancelled());
+        assertTrue(periodic.isCancelled());
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+
+        advance(TimeUnit.HOURS.toSeconds(3));
+        assertIdle();
+        assertEquals(0, runs.get());
+    }
+
+    private TimerScheduler create(final TimerScheduler.CatchUp catchUp)
+    {
+        return new TimerScheduler(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                dispatched.add(command);
+            }
+        }, clock, catchUp);
+    }
+
+    private void advance(final long seconds)
+    {
+        clock.advance(seconds, TimeUnit.SECONDS);
+        scheduler.wakeUp();
+    }
+
+    private Runnable next() throws InterruptedException
+    {
+        Runnable task = dispatched.poll(10, TimeUnit.SECONDS);
+        assertNotNull("no task dispatched", task);
+
+        return task;
+    }
+
+    private void assertIdle() throws InterruptedException
+    {
+        assertNull(dispatched.poll(50, TimeUnit.MILLISECONDS));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*
+ * This file is part of ToolBox
+ * https://github.com/perbone/toolbox/
+ * 
+ * Copyright 2013-2018 Paulo Perbone
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package io.perbone.toolbox.time;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Paulo Perbone <pauloperbone@yahoo.com>
+ * @since 0.6.0
+ */
+public class TokenBucketTest
+{
+    private ManualClock clock;
+
+    private TokenBucket bucket;
+
+    @Before
+    public void before()
+    {
+        clock = new ManualClock(TimeUnit.DAYS.toNanos(3));
+        bucket = new TokenBucket(10, 1, TimeUnit.SECONDS, 5, clock); // a permit every 100ms
+    }
+
+    @Test
+    public void burstAndRefill()
+    {
+        assertEquals(5, bucket.getAvailablePermits());
+        assertTrue(bucket.tryAcquire(5));
+        assertFalse(bucket.tryAcquire());
+        assertEquals(0, bucket.getAvailablePermits());
+
+        clock.advance(250, TimeUnit.MILLISECONDS);
+        assertEquals(2, bucket.getAvailablePermits());
+        assertFalse(bucket.tryAcquire(3));
+        assertTrue(bucket.tryAcquire(2));
+        assertEquals(0, bucket.getAvailablePermits());
+
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(5, bucket.getAvailablePermits());
+    }
+
+    @Test
+    public void timedAcquire() throws InterruptedException
+    {
+        assertTrue(bucket.tryAcquire(5));
+
+        long start = clock.nanoTime();
+        assertFalse(bucket.tryAcquire(3, 200, TimeUnit.MILLISECONDS));
+        assertEquals(start, clock.nanoTime());
+
+        assertTrue(bucket.tryAcquire(3, 300, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), clock.nanoTime() - start);
+        assertEquals(0, bucket.getAvailablePermits());
+
+        bucket.acquire();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), clock.nanoTime() - start);
+    }
+
+    @Test
+    public void clampedAvailablePermits()
+    {
+        // interrupted waits keep their permits, reserving them ahead of the burst tolerance
+        for (int i = 0; i < 2; i++)
+        {
+            Thread.currentThread().interrupt();
+            try
+            {
+                bucket.acquire(5);
+                fail();
+            }
+            catch (InterruptedException e)
+            {
+                // expected
+            }
+        }
+
+        assertEquals(0, bucket.getAvailablePermits());
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(0, bucket.getAvailablePermits());
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, bucket.getAvailablePermits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void permitsAboveCapacity()
+    {
+        bucket.tryAcquire(6);
+    }
+}
\ No newline at end of file